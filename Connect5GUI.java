@@ -16,8 +16,6 @@ import java.io.File;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.util.StringTokenizer;
-import java.util.HashSet;
-import java.util.Set;
 import java.util.List;
 import java.nio.file.Files;
 import java.nio.file.Paths;
@@ -191,52 +189,76 @@ public class Connect5GUI {
      * AI-controlled player that uses advanced algorithms (minimax, alpha-beta
      * pruning)
      * to determine optimal moves. Supports three difficulty levels: BEGINNER,
-     * MEDIUM, and SMART.
+     * MEDIUM, and SMART, plus the Monte Carlo tree search engine MCTS.
      * Includes learning capabilities to avoid previously losing move sequences.
      */
     static class AIPlayer extends Player {
         String difficulty;
         private final Random rand = new Random();
-        private static final long TIME_LIMIT_MS = 9900; // 9.9 seconds to maximize think time
-
-        // --- AI Learning Memory ---
-        private static final String MEMORY_FILE = "ai_memory.txt";
-        private static final Set<String> badSequences = new HashSet<>();
-
-        static {
-            loadBadSequences();
-        }
+        private static final int TT_SIZE = 1 << 20; // slots (16 MB), allocated on first SMART search
+        static final int MAX_MOVES = 64; // 64 empty squares, or 8 pieces x 8 steps
+        static final int MAX_PLY = 64;
+        private static final long PONDER_LIMIT_MS = 120_000; // a forgotten game stops pondering eventually
+        private static final int ASPIRATION_WINDOW = 1000; // half-width of the first window around the last score
+        private static final int WIN_SCORE = 900_000_000; // scores beyond this are forced wins or losses
+        private static final int NULL_MOVE_R = 2; // extra depth reduction of the null-move search
+        private static final int LMR_MIN_INDEX = 4; // moves before this in the ordering are never reduced
+        private static final int QUIET_SCORE_LIMIT = 1 << 28; // ordering scores below this are history moves
+        private static final int QS_MAX_PLY = 6; // forcing plies searched past the horizon
+        private static final int QS_MAX_MOVES = 8; // four-making moves tried per quiescence node
+        private static final int MAXN_TOTAL = 1 << 26; // max-n utilities of all players add up to at most this
+
+        // Multi-player search modes of the SMART search
+        static final int PARANOID = 1; // every opponent minimizes, one ply each (exact for 2 players)
+        static final int BEST_REPLY = 2; // all opponents' moves form one min layer, the best of them is played
+        static final int MAX_N = 3; // every player maximizes its own utility, with shallow pruning
+
+        // Shared by all AI players; daemon threads so a running search never blocks exit
+        private static final java.util.concurrent.ExecutorService HELPER_POOL = java.util.concurrent.Executors
+                .newCachedThreadPool(r -> {
+                    Thread t = new Thread(r, "AI search helper");
+                    t.setDaemon(true);
+                    return t;
+                });
 
-        private static void loadBadSequences() {
-            try {
-                if (Files.exists(Paths.get(MEMORY_FILE))) {
-                    List<String> lines = Files.readAllLines(Paths.get(MEMORY_FILE));
-                    badSequences.addAll(lines);
-                    // System.out.println("AI Loaded " + lines.size() + " bad sequences.");
-                }
-            } catch (IOException e) {
-                // Ignore silent fail
-            }
-        }
+        // SMART search state, allocated once on the first search and reused
+        private TranspositionTable tt;
+        private SearchWorker[] workers; // [0] is the main thread's
+        private int searchThreads = Runtime.getRuntime().availableProcessors();
+        private volatile boolean stopHelpers; // also stops pondering
+        private volatile boolean cancelled; // set by cancelSearch(), keeps stopHelpers set
+        private java.util.concurrent.Future<?> ponderTask; // running ponder search, if any
+        long ponderNodes; // nodes searched by the last ponder search
+        private int moveCap; // moves searched per node, 0 = all
+        private boolean lateMoveReductions = true;
+        private boolean nullMovePruning = true;
+        private boolean quiescence = true;
+        private boolean maxNPruning = true;
+        private NeuralEval network = NeuralEval.shared(); // null (the default): window heuristic
+        private int searchMode; // forced multi-player mode, 0 = chosen by player count
+        private int activeMode; // mode of the running search
+        long nodes; // nodes visited by the last search, all threads
+        long aspirationFails; // root re-searches in the last search, all threads
+        long lmrReductions, lmrResearches; // late-move reductions in the last search, all threads
+        long nullTries, nullCutoffs; // null-move searches in the last search, all threads
+        long quiescenceNodes; // nodes searched past the horizon in the last search, all threads
+        int depthReached; // deepest iteration the main thread finished in the last search
+        int bestScore; // score of the move returned by the last search
+
+        // MCTS settings and statistics
+        private long playoutLimit; // playouts per move, 0 = until the time target
+        long playouts; // playouts of the last MCTS search, all threads
+        long playoutsPerSecond;
 
         /**
-         * Saves a losing game's move history to avoid repeating the same mistakes.
+         * Remembers a lost game so that no AI repeats the loser's moves in it.
+         * Only updates memory here; the file is written in the background.
          * 
-         * @param history The list of moves that led to a loss
+         * @param game  The finished game
+         * @param loser Index of the losing player
          */
-        static void saveLosingGame(List<String> history) {
-            if (history.isEmpty())
-                return;
-            String seq = String.join(";", history);
-            if (!badSequences.contains(seq)) {
-                badSequences.add(seq);
-                try {
-                    Files.write(Paths.get(MEMORY_FILE), (seq + System.lineSeparator()).getBytes(),
-                            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
+        static void saveLosingGame(Game game, int loser) {
+            LearningMemory.shared().recordLoss(game, loser);
         }
 
         /**
@@ -244,7 +266,7 @@ public class Connect5GUI {
          * 
          * @param name       The AI player's display name
          * @param symbol     The AI player's unique symbol
-         * @param difficulty The difficulty level: "BEGINNER", "MEDIUM", or "SMART"
+         * @param difficulty The difficulty level: "BEGINNER", "MEDIUM", "SMART" or "MCTS"
          */
         AIPlayer(String name, char symbol, String difficulty) {
             super(name, symbol);
@@ -276,7 +298,8 @@ public class Connect5GUI {
 
         /**
          * Represents a potential move (either placement or movement).
-         * Includes score evaluation for move ordering.
+         * The search itself works on int-encoded moves (see code()); Move objects
+         * are only created for the move that is finally returned.
          */
         static class Move {
             int fromC, fromR, toC, toR;
@@ -301,6 +324,81 @@ public class Connect5GUI {
                     return "P:" + toC + "," + toR;
                 return "M:" + fromC + "," + fromR + ":" + toC + "," + toR;
             }
+
+            int fromSquare() {
+                return BitBoard.square(fromC, fromR);
+            }
+
+            int toSquare() {
+                return BitBoard.square(toC, toR);
+            }
+
+            /**
+             * Int encoding used throughout the search: target square in bits 0-5,
+             * source square in bits 6-11, bit 12 set for placements. Never 0.
+             */
+            int code() {
+                return placement ? placementCode(toSquare()) : stepCode(fromSquare(), toSquare());
+            }
+
+            static int placementCode(int to) {
+                return PLACEMENT_FLAG | to;
+            }
+
+            static int stepCode(int from, int to) {
+                return (from << 6) | to;
+            }
+
+            static int to(int code) {
+                return code & 63;
+            }
+
+            static int from(int code) {
+                return (code >>> 6) & 63;
+            }
+
+            static boolean isPlacement(int code) {
+                return (code & PLACEMENT_FLAG) != 0;
+            }
+
+            /** The move as played on the board transformed by symmetry t (0 stays 0). */
+            static int transform(int code, int t) {
+                if (code == 0)
+                    return 0;
+                int to = BitBoard.SYMMETRY[t][to(code)];
+                return isPlacement(code) ? placementCode(to) : stepCode(BitBoard.SYMMETRY[t][from(code)], to);
+            }
+
+            /**
+             * Tags a move with the player making it (player + 1 in bits 13-15), for
+             * best-reply search layers that mix the moves of several opponents.
+             */
+            static int withMover(int code, int player) {
+                return code | ((player + 1) << MOVER_SHIFT);
+            }
+
+            /** The player a tagged move belongs to, or fallback if it is untagged. */
+            static int mover(int code, int fallback) {
+                int tag = code >>> MOVER_SHIFT;
+                return tag == 0 ? fallback : tag - 1;
+            }
+
+            /** The move without its mover tag. */
+            static int plain(int code) {
+                return code & ((1 << MOVER_SHIFT) - 1);
+            }
+
+            /** Converts an encoded move back into a Move for the game loop. */
+            static Move of(int code) {
+                int to = to(code);
+                if (isPlacement(code))
+                    return new Move(to & 7, to >>> 3);
+                int from = from(code);
+                return new Move(from & 7, from >>> 3, to & 7, to >>> 3);
+            }
+
+            private static final int PLACEMENT_FLAG = 1 << 12;
+            private static final int MOVER_SHIFT = 13;
         }
 
         // Exception to break recursion on timeout
@@ -315,684 +413,3882 @@ public class Connect5GUI {
          */
         Move pickMove(Game game) {
             String d = (difficulty == null) ? "BEGINNER" : difficulty.toUpperCase();
+            stopPondering(); // its results are in the transposition table
 
-            ArrayList<Move> moves = generateMoves(game, game.board.grid, this.symbol, game.gamePhase);
+            BitBoard bb = positionOf(game);
+            int meIdx = bb.indexOf(this.symbol);
+            boolean placement = "PLACEMENT".equals(game.gamePhase);
+            int[] moves = new int[MAX_MOVES];
+            int n = generateMoves(bb, meIdx, placement, moves);
 
             // --- Learning: Avoid bad paths ---
-            String currentHist = String.join(";", game.moveHistory);
-            if (!game.moveHistory.isEmpty())
-                currentHist += ";"; // Add separator if not empty
-
-            for (Move m : moves) {
-                String candidate = currentHist + m.toHistoryString();
-                // Check if this move starts any known bad sequence
-                for (String bad : badSequences) {
-                    if (bad.startsWith(candidate)) {
-                        // Found a match! This path leads to a known loss.
-                        m.score -= 50000;
-                        break;
-                    }
-                }
-            }
+            // Penalties feed the root move ordering of the SMART search. Lookups are
+            // by canonical position, so transpositions and symmetric positions match.
+            int[] learned = new int[n];
+            LearningMemory memory = LearningMemory.shared();
+            for (int i = 0; i < n; i++)
+                if (memory.contains(LearningMemory.pairKey(bb, meIdx, moves[i])))
+                    learned[i] -= 50000; // This move has lost from here before
             // ---------------------------------
 
-            if (moves.isEmpty())
+            if (n == 0)
                 return null;
 
             // 1) Immediate win check (FAST)
-            Move win = findWinningMove(game, this.symbol);
-            if (win != null)
-                return win;
+            int win = findWinningMove(bb, meIdx, placement);
+            if (win != 0)
+                return Move.of(win);
 
             // 2) Immediate block check (MEDIUM/SMART)
             if (!"BEGINNER".equals(d)) {
-                Move block = findBestBlockAnyOpponent(game, this.symbol);
-                if (block != null)
-                    return block;
+                int block = findBestBlockAnyOpponent(game, bb, meIdx, placement);
+                if (block != 0)
+                    return Move.of(block);
             }
 
             // 3) Difficulty logic
             if ("BEGINNER".equals(d))
-                return moves.get(rand.nextInt(moves.size()));
+                return Move.of(moves[rand.nextInt(n)]);
             if ("MEDIUM".equals(d))
-                return pickBestHeuristic(game, this.symbol, moves);
+                return Move.of(pickBestHeuristic(game, bb, meIdx, moves, n));
+            if ("MCTS".equals(d))
+                return Move.of(pickMonteCarlo(game, bb, moves, TimeManager.forMove(game, this, placement)));
+
+            // SMART: a forced win proven by the threat-space search needs no further search
+            if (placement) {
+                int[] forced = ThreatSolver.findWin(bb, meIdx, true);
+                if (forced != null)
+                    return Move.of(forced[0]);
+            }
+
+            // SMART: a forced move needs no search
+            if (n == 1)
+                return Move.of(moves[0]);
+
+            // SMART: opening positions are looked up in the precomputed book
+            OpeningBook book = placement ? OpeningBook.shared() : null;
+            if (book != null) {
+                int bookMove = book.probe(bb, meIdx);
+                for (int i = 0; i < n; i++)
+                    if (moves[i] == bookMove && learned[i] == 0) // unless it has lost before
+                        return Move.of(bookMove);
+            }
 
             // SMART: Iterative Deepening with Time Control
-            return pickIterativeDeepening(game, this.symbol, moves);
+            int maxDepth = placement ? 10 : 12;
+            TimeManager time = TimeManager.forMove(game, this, placement);
+            return Move.of(pickIterativeDeepening(game, bb, meIdx, moves, learned, n, maxDepth, time));
         }
 
         /**
-         * Uses iterative deepening with alpha-beta pruning to find the best move.
-         * Continues searching deeper until the time limit is reached.
+         * Runs the Monte Carlo tree search on searchThreads threads until the time
+         * target or the playout limit.
          * 
          * @param game  The current game state
-         * @param me    This AI player's symbol
-         * @param moves List of possible moves to evaluate
-         * @return The best move found within the time limit
+         * @param bb    Bitboard position of the game
+         * @param moves Encoded legal moves (the first is the fallback if cancelled)
+         * @param time  Time budget
+         * @return The encoded move chosen
          */
-        private Move pickIterativeDeepening(Game game, char me, ArrayList<Move> moves) {
-            long startTime = System.currentTimeMillis();
-            long endTime = startTime + TIME_LIMIT_MS;
+        int pickMonteCarlo(Game game, BitBoard bb, int[] moves, TimeManager time) {
+            MonteCarloSearch mcts = new MonteCarloSearch(game.players.length, game.maxMoves);
+            int best = mcts.search(game, bb, searchThreads, time, playoutLimit, () -> cancelled);
+            playouts = mcts.playouts();
+            playoutsPerSecond = mcts.playoutsPerSecond();
+            return best != 0 ? best : moves[0];
+        }
 
-            Move bestMove = moves.get(0);
+        /**
+         * Uses iterative deepening with alpha-beta pruning to find the best move.
+         * Continues searching deeper until the time limit is reached.
+         * With more than one search thread this is a Lazy SMP search: helper
+         * threads run the same iterative deepening at staggered depths on their own
+         * board copies and share the lock-free transposition table, which speeds up
+         * the main thread's iterations. Only the main thread's result is reported.
+         * 
+         * @param game        The current game state
+         * @param bb          Bitboard position of the game (used as the working copy)
+         * @param me          This AI player's index in game.players
+         * @param moves       Encoded root moves
+         * @param bias        Root ordering adjustment per move (learning penalties)
+         * @param n           Number of root moves
+         * @param maxDepth    Deepest iteration to run
+         * @param time        Time budget; decides when to stop deepening
+         * @return The encoded best move found within the time limit
+         */
+        int pickIterativeDeepening(Game game, BitBoard bb, int me, int[] moves, int[] bias, int n, int maxDepth,
+                TimeManager time) {
             // In placement, huge branching factor, so max depth around 6-8 is good.
             // In movement, we can go deeper potentially.
-            int maxDepthRaw = ("PLACEMENT".equals(game.gamePhase)) ? 10 : 12; // Increased limits
-
-            // Make a WORKING COPY of the grid once, then use backtracking
-            char[][] workingGrid = copyGrid(game.board.grid);
-
-            // Initial sort with shallow heuristic
-            ArrayList<Move> ordered = orderAndCapMoves(game, workingGrid, moves, me, me, game.gamePhase, true);
+            ensureSearchState();
+            tt.newSearch();
+            stopHelpers = cancelled;
+            activeMode = searchModeFor(game.players.length);
+
+            SearchWorker main = workers[0];
+            main.reset(bb);
+
+            // Initial sort with shallow heuristic, led by the move stored from an earlier search
+            int[] ordered = main.moveStack[0];
+            int[] scores = main.scoreStack[0];
+            System.arraycopy(moves, 0, ordered, 0, n);
+            int sym = bb.canonicalSymmetry();
+            int rootTtMove = Move.transform(TranspositionTable.moveOf(tt.probe(bb.symmetricKey(sym, me))),
+                    BitBoard.INVERSE[sym]);
+            int count = orderRootMoves(game, bb, ordered, scores, n, me, rootTtMove, bias);
+            int bestMove = ordered[0];
+
+            // Lazy SMP helpers: odd-numbered helpers start one ply deeper
+            ArrayList<java.util.concurrent.Future<?>> helpers = new ArrayList<>();
+            for (int i = 1; i < workers.length; i++) {
+                SearchWorker helper = workers[i];
+                helper.reset(bb.copy());
+                System.arraycopy(ordered, 0, helper.moveStack[0], 0, count);
+                System.arraycopy(scores, 0, helper.scoreStack[0], 0, count);
+                int firstDepth = 1 + (i & 1);
+                helpers.add(HELPER_POOL.submit(() -> {
+                    try {
+                        for (int depth = firstDepth; depth <= maxDepth && !stopHelpers; depth++)
+                            helper.searchIteration(game, me, count, depth, time);
+                    } catch (TimeoutException e) {
+                        // Stopped by the main thread or out of time
+                    }
+                }));
+            }
 
             try {
                 // Iterative Deepening: Depth 1, 2, 3...
-                for (int depth = 1; depth <= maxDepthRaw; depth++) {
+                for (int depth = 1; depth <= maxDepth; depth++) {
+                    main.searchIteration(game, me, count, depth, time);
+                    if (main.rootWin)
+                        return main.rootBest;
+                    if (count > 0) {
+                        bestMove = ordered[0];
+                        bestScore = main.rootValue;
+                        // System.out.println("ID Depth " + depth + " best: " + main.rootValue);
+                    }
                     // Check time before starting a new depth
-                    if (System.currentTimeMillis() >= endTime)
+                    if (count <= 1 || !time.continueAfter(bestMove, main.rootValue))
                         break;
-
-                    Move currentBest = null;
-                    int bestVal = Integer.MIN_VALUE;
-
-                    // Root level of Alpha-Beta
-                    for (Move m : ordered) {
-                        if (System.currentTimeMillis() >= endTime)
-                            throw new TimeoutException();
-
-                        applyMove(workingGrid, m, me);
-
-                        // If immediate win, take it
-                        if (winnerOnGrid(workingGrid, game.connectTarget) == me) {
-                            undoMove(workingGrid, m, me); // Be tidy
-                            return m;
-                        }
-
-                        int nextIndex = (game.currentPlayerIndex + 1) % game.players.length;
-                        int val;
-                        try {
-                            val = alphaBeta(game, workingGrid, nextIndex, me, depth - 1,
-                                    Integer.MIN_VALUE / 2, Integer.MAX_VALUE / 2, endTime);
-                        } finally {
-                            undoMove(workingGrid, m, me); // BACKTRACK
-                        }
-
-                        // Positional tie-breaker
-                        val += centerScore(m.toC, m.toR);
-
-                        if (val > bestVal) {
-                            bestVal = val;
-                            currentBest = m;
-                        }
-                    }
-
-                    if (currentBest != null) {
-                        bestMove = currentBest;
-                        // Optimization: Move best move to front for next iteration
-                        ordered.remove(bestMove);
-                        ordered.add(0, bestMove);
-                        // System.out.println("ID Depth " + depth + " best: " + bestVal);
-                    }
                 }
             } catch (TimeoutException e) {
                 // Time up, return best move found so far
+            } finally {
+                stopHelpers = true;
+                for (java.util.concurrent.Future<?> f : helpers) {
+                    try {
+                        f.get();
+                    } catch (Exception ignored) {
+                    }
+                }
+                nodes = 0;
+                aspirationFails = 0;
+                lmrReductions = lmrResearches = nullTries = nullCutoffs = quiescenceNodes = 0;
+                for (SearchWorker w : workers) {
+                    nodes += w.nodes;
+                    aspirationFails += w.aspirationFails;
+                    lmrReductions += w.lmrReductions;
+                    lmrResearches += w.lmrResearches;
+                    nullTries += w.nullTries;
+                    nullCutoffs += w.nullCutoffs;
+                    quiescenceNodes += w.quiescenceNodes;
+                }
+                depthReached = main.completedDepth;
             }
             return bestMove;
         }
 
         /**
-         * Alpha-beta pruning minimax algorithm for game tree search.
+         * Starts searching the game's current position in the background while
+         * another player (normally the human) is to move. The search runs from
+         * that player's side with this AI's evaluation, so every reply they can
+         * make becomes a subtree whose results, best moves and ordering statistics
+         * are waiting in the shared tables when this AI's own search starts.
+         * Only the SMART difficulty ponders; pickMove stops it.
          * 
-         * @param game        The current game state
-         * @param grid        The board grid (working copy for backtracking)
-         * @param playerIndex The current player's index
-         * @param me          This AI player's symbol
-         * @param depth       Remaining search depth
-         * @param alpha       Alpha value for pruning
-         * @param beta        Beta value for pruning
-         * @param endTime     Time limit for the search
-         * @return The evaluated score for this position
+         * @param game The game, with another player to move
          */
-        private int alphaBeta(Game game, char[][] grid, int playerIndex, char me, int depth, int alpha, int beta,
-                long endTime) {
-            if (System.currentTimeMillis() >= endTime)
-                throw new TimeoutException();
-
-            char winner = winnerOnGrid(grid, game.connectTarget);
-            if (winner != 0 || depth <= 0) {
-                return terminalScore(game, grid, me, winner, depth);
-            }
-
-            String phase = computePhase(game, grid);
-            char sym = game.players[playerIndex].symbol;
-
-            ArrayList<Move> moves = generateMoves(game, grid, sym, phase);
-            if (moves.isEmpty())
-                return evaluatePosition(game, grid, me);
+        synchronized void startPondering(Game game) {
+            stopPondering(); // an earlier ponder search is for an older position
+            if (!"SMART".equalsIgnoreCase(difficulty) || game.isGameOver() || game.currentPlayer() == this)
+                return;
+            activeMode = searchModeFor(game.players.length);
+            if (activeMode == MAX_N)
+                return; // max-n keeps nothing in the transposition table
+            ensureSearchState();
+            BitBoard bb = positionOf(game);
+            int me = bb.indexOf(symbol);
+            int toMove = game.currentPlayerIndex;
+            // The main worker ponders, so its history and counter-move tables stay warm too
+            SearchWorker worker = workers[0];
+            worker.reset(bb);
+            worker.pondering = true;
+            worker.playedMove[0] = 0;
+            tt.newSearch();
+            stopHelpers = cancelled;
+            TimeManager time = TimeManager.fixed(PONDER_LIMIT_MS);
+            ponderTask = HELPER_POOL.submit(() -> {
+                try {
+                    for (int depth = 1; depth < MAX_PLY / 2 && !stopHelpers; depth++)
+                        worker.alphaBeta(game, toMove, me, depth, 1, Integer.MIN_VALUE / 2, Integer.MAX_VALUE / 2,
+                                time);
+                } catch (TimeoutException e) {
+                    // Stopped, or pondered long enough
+                }
+            });
+        }
 
-            boolean maximize = (sym == me);
-            ArrayList<Move> ordered = orderAndCapMoves(game, grid, moves, sym, me, phase, maximize);
+        /**
+         * Aborts the move being computed: a running search stops at its next node
+         * check and later searches return at once until allowSearch() is called.
+         * Safe to call from any thread.
+         */
+        void cancelSearch() {
+            cancelled = true;
+            stopHelpers = true;
+        }
 
-            int nextIndex = (playerIndex + 1) % game.players.length;
+        /** Clears a cancellation before this player is asked for a new move. */
+        void allowSearch() {
+            cancelled = false;
+        }
 
-            if (maximize) {
-                int best = Integer.MIN_VALUE / 2;
-                for (Move m : ordered) {
-                    applyMove(grid, m, sym);
-                    try {
-                        int val = alphaBeta(game, grid, nextIndex, me, depth - 1, alpha, beta, endTime);
-                        best = Math.max(best, val);
-                        alpha = Math.max(alpha, best);
-                    } finally {
-                        undoMove(grid, m, sym); // BACKTRACK
-                    }
-                    if (beta <= alpha)
-                        break;
-                }
-                return best;
-            } else {
-                int best = Integer.MAX_VALUE / 2;
-                for (Move m : ordered) {
-                    applyMove(grid, m, sym);
-                    try {
-                        int val = alphaBeta(game, grid, nextIndex, me, depth - 1, alpha, beta, endTime);
-                        best = Math.min(best, val);
-                        beta = Math.min(beta, best);
-                    } finally {
-                        undoMove(grid, m, sym); // BACKTRACK
-                    }
-                    if (beta <= alpha)
-                        break;
-                }
-                return best;
+        /** Stops a running ponder search and waits for it to finish. */
+        synchronized void stopPondering() {
+            if (ponderTask == null)
+                return;
+            stopHelpers = true;
+            try {
+                ponderTask.get();
+            } catch (Exception ignored) {
             }
+            ponderTask = null;
+            ponderNodes = workers[0].nodes;
         }
 
-        /**
-         * Generates all legal moves for the given player in the current game state.
-         * 
-         * @param game  The current game state
-         * @param grid  The board grid
-         * @param sym   The player symbol to generate moves for
-         * @param phase The current game phase ("PLACEMENT" or "MOVEMENT")
-         * @return List of all legal moves
-         */
-        private ArrayList<Move> generateMoves(Game game, char[][] grid, char sym, String phase) {
-            ArrayList<Move> list = new ArrayList<>();
-            boolean placementPhase = "PLACEMENT".equals(phase);
-            if (placementPhase) {
-                int placed = countPieces(grid, sym);
-                if (placed >= 8) // PLACEMENT_LIMIT
-                    return list;
-                for (int r = 0; r < 8; r++)
-                    for (int c = 0; c < 8; c++)
-                        if (grid[r][c] == EMPTY)
-                            list.add(new Move(c, r));
-            } else {
-                for (int r = 0; r < 8; r++)
-                    for (int c = 0; c < 8; c++) {
-                        if (grid[r][c] != sym)
-                            continue;
-                        for (int dr = -1; dr <= 1; dr++)
-                            for (int dc = -1; dc <= 1; dc++) {
-                                if (dr == 0 && dc == 0)
-                                    continue;
-                                int nr = r + dr, nc = c + dc;
-                                if (nc < 0 || nc >= 8 || nr < 0 || nr >= 8)
-                                    continue;
-                                if (grid[nr][nc] == EMPTY)
-                                    list.add(new Move(c, r, nc, nr));
-                            }
-                    }
+        /** Allocates the transposition table and one worker per search thread on first use. */
+        void ensureSearchState() {
+            if (tt == null)
+                tt = new TranspositionTable(TT_SIZE);
+            if (workers == null || workers.length != searchThreads) {
+                workers = new SearchWorker[searchThreads];
+                for (int i = 0; i < workers.length; i++)
+                    workers[i] = new SearchWorker();
             }
-            return list;
         }
 
-        private String computePhase(Game game, char[][] grid) {
-            for (Player p : game.players) {
-                if (countPieces(grid, p.symbol) < 8) // PLACEMENT_LIMIT
-                    return "PLACEMENT";
-            }
-            return "MOVEMENT";
+        int getSearchThreads() {
+            return searchThreads;
         }
 
-        private int countPieces(char[][] grid, char sym) {
-            int count = 0;
-            for (int r = 0; r < 8; r++)
-                for (int c = 0; c < 8; c++)
-                    if (grid[r][c] == sym)
-                        count++;
-            return count;
+        int getMoveCap() {
+            return moveCap;
         }
 
         /**
-         * Finds an immediate winning move for the specified player.
+         * Limits every node of the SMART search to its first moves in order. Off by
+         * default: it drops moves the ordering underrates, so only set it where the
+         * benchmark shows the lost accuracy is worth the speed.
          * 
-         * @param game The current game state
-         * @param sym  The player symbol
-         * @return A winning move if one exists, otherwise null
+         * @param cap Moves searched per node, 0 to search all
          */
-        private Move findWinningMove(Game game, char sym) {
-            ArrayList<Move> moves = generateMoves(game, game.board.grid, sym, game.gamePhase);
-            for (Move m : moves) {
-                char[][] g2 = copyGrid(game.board.grid);
-                applyMove(g2, m, sym);
-                if (winnerOnGrid(g2, game.connectTarget) == sym)
-                    return m;
-            }
-            return null;
+        void setMoveCap(int cap) {
+            this.moveCap = Math.max(0, cap);
+        }
+
+        /** Turns late-move reductions in the SMART search on or off (on by default). */
+        void setLateMoveReductions(boolean enabled) {
+            this.lateMoveReductions = enabled;
         }
 
         /**
-         * Finds the best blocking move to prevent all opponents from winning.
-         * Evaluates which move minimizes the number of opponent winning threats.
-         * 
-         * @param game The current game state
-         * @param me   This AI player's symbol
-         * @return The best blocking move, or null if no threats exist
+         * Forces a multi-player search mode (PARANOID, BEST_REPLY or MAX_N), or 0 to
+         * choose by player count: paranoid alpha-beta for two players, where it is
+         * exact, and best-reply search for more, where paranoid search spends a ply
+         * on every opponent and loses its depth.
          */
-        private Move findBestBlockAnyOpponent(Game game, char me) {
-            ArrayList<Character> oppSyms = new ArrayList<>();
-            for (Player p : game.players)
-                if (p.symbol != me)
-                    oppSyms.add(p.symbol);
-
-            boolean threat = false;
-            for (char opp : oppSyms) {
-                ArrayList<Move> omoves = generateMoves(game, game.board.grid, opp, game.gamePhase);
-                for (Move om : omoves) {
-                    char[][] g2 = copyGrid(game.board.grid);
-                    applyMove(g2, om, opp);
-                    if (winnerOnGrid(g2, game.connectTarget) == opp) {
-                        threat = true;
-                        break;
-                    }
-                }
-                if (threat)
-                    break;
-            }
-            if (!threat)
-                return null;
+        void setSearchMode(int mode) {
+            this.searchMode = mode;
+        }
 
-            ArrayList<Move> myMoves = generateMoves(game, game.board.grid, me, game.gamePhase);
-            Move best = null;
-            int bestThreats = Integer.MAX_VALUE;
+        /** The search mode a game with this many players is searched with. */
+        int searchModeFor(int players) {
+            if (searchMode != 0)
+                return searchMode;
+            return players > 2 ? BEST_REPLY : PARANOID;
+        }
 
-            for (Move mm : myMoves) {
-                char[][] g2 = copyGrid(game.board.grid);
-                applyMove(g2, mm, me);
-                String phase2 = computePhase(game, g2);
+        /** Turns the threat quiescence search at the SMART search's horizon on or off (on by default). */
+        void setQuiescence(boolean enabled) {
+            this.quiescence = enabled;
+        }
 
-                int threats = 0;
-                for (char opp : oppSyms) {
-                    ArrayList<Move> omoves = generateMoves(game, g2, opp, phase2);
-                    for (Move om : omoves) {
-                        char[][] g3 = copyGrid(g2);
-                        applyMove(g3, om, opp);
-                        if (winnerOnGrid(g3, game.connectTarget) == opp)
-                            threats++;
-                    }
-                }
-                if (threats < bestThreats) {
-                    bestThreats = threats;
-                    best = mm;
-                    if (bestThreats == 0)
-                        break;
-                }
-            }
-            return best;
+        /** Turns shallow pruning in the max-n search on or off (on by default; off only to check it). */
+        void setMaxNPruning(boolean enabled) {
+            this.maxNPruning = enabled;
         }
 
         /**
-         * Selects the best move using a simple heuristic evaluation.
-         * Used for MEDIUM difficulty.
+         * Evaluates leaves with a neural network instead of the window heuristic.
+         * Off unless a network is set here or named by -Dconnect5.nnue.
          * 
-         * @param game  The current game state
-         * @param me    This AI player's symbol
-         * @param moves List of candidate moves
-         * @return The move with the highest heuristic score
+         * @param net The network, or null for the window heuristic
          */
-        private Move pickBestHeuristic(Game game, char me, ArrayList<Move> moves) {
-            Move best = null;
-            int bestScore = Integer.MIN_VALUE;
-            for (Move m : moves) {
-                char[][] g2 = copyGrid(game.board.grid);
-                applyMove(g2, m, me);
-                int score = evaluatePosition(game, g2, me) + centerScore(m.toC, m.toR);
-                if (score > bestScore) {
-                    bestScore = score;
-                    best = m;
-                }
-            }
-            return (best != null) ? best : moves.get(rand.nextInt(moves.size()));
+        void setNeuralEval(NeuralEval net) {
+            this.network = net;
         }
 
-        private int terminalScore(Game game, char[][] grid, char me, char winner, int depthRemaining) {
-            if (winner == me)
-                return 1_000_000_000 - (100 * (100 - depthRemaining));
-            if (winner != 0)
-                return -1_000_000_000 + (100 * (100 - depthRemaining));
-            return evaluatePosition(game, grid, me);
+        /** Bitboard of the game's position, with a network accumulator when a network is in use. */
+        private BitBoard positionOf(Game game) {
+            BitBoard bb = BitBoard.from(game);
+            if (network != null)
+                bb.nnue = network.accumulate(bb);
+            return bb;
         }
 
-        private ArrayList<Move> orderAndCapMoves(Game game, char[][] grid, ArrayList<Move> moves,
-                char mover, char me, String phase, boolean maximize) {
-            for (Move m : moves) {
-                applyMove(grid, m, mover);
-                m.score = evaluatePosition(game, grid, me);
-                if (mover == me)
-                    m.score += centerScore(m.toC, m.toR);
-                undoMove(grid, m, mover); // Backtrack
-            }
-            moves.sort((a, b) -> maximize ? Integer.compare(b.score, a.score) : Integer.compare(a.score, b.score));
-            if (moves.size() > 28) {
-                return new ArrayList<>(moves.subList(0, "PLACEMENT".equals(phase) ? 14 : 28));
-            }
-            return moves;
+        /** Turns placement-phase null-move pruning in the SMART search on or off (on by default). */
+        void setNullMovePruning(boolean enabled) {
+            this.nullMovePruning = enabled;
         }
 
         /**
-         * Evaluates the overall position from the AI's perspective.
-         * Balances offensive potential with defensive threats.
+         * Stops each MCTS search after this many playouts instead of at its time
+         * target (which still applies).
          * 
-         * @param game The current game state
-         * @param grid The board grid
-         * @param me   This AI player's symbol
-         * @return The heuristic score (higher is better for the AI)
+         * @param limit Playouts per move, 0 for no limit
          */
-        private int evaluatePosition(Game game, char[][] grid, char me) {
-            // Heuristic score: My Score - (Opponent Max Score * 0.9)
-            // We want to be aggressive but also respect enemy threats.
-
-            // Calculate my potential
-            int myScore = heuristic(game, grid, me);
-
-            // Calculate opponent potentials
-            int oppMax = 0;
-            for (Player p : game.players) {
-                if (p.symbol == me)
-                    continue;
-                oppMax = Math.max(oppMax, heuristic(game, grid, p.symbol));
-            }
-
-            return myScore - (int) (0.9 * oppMax);
+        void setPlayoutLimit(long limit) {
+            this.playoutLimit = Math.max(0, limit);
         }
 
-        private int centerScore(int c, int r) {
-            // Favor center (3,3)-(4,4)
-            int dc = Math.abs(c - 3) + Math.abs(c - 4);
-            int dr = Math.abs(r - 3) + Math.abs(r - 4);
-            return 50 - (dc + dr) * 5;
+        /**
+         * Sets how many threads the SMART and MCTS searches use (1 = single-threaded).
+         * 
+         * @param threads Number of search threads, at least 1
+         */
+        void setSearchThreads(int threads) {
+            this.searchThreads = Math.max(1, threads);
         }
 
         /**
-         * Advanced heuristic function that counts potential winning lines.
-         * Evaluates all possible windows of the target connection length.
-         * 
-         * @param game The current game state
-         * @param grid The board grid
-         * @param me   The player symbol to evaluate for
-         * @return The heuristic score for this player
+         * State of one search thread: its own board copy, per-ply move stacks and
+         * node count. The transposition table is shared through the AIPlayer.
          */
-        private int heuristic(Game game, char[][] grid, char me) {
-            int score = 0;
-            int n = game.connectTarget;
+        private class SearchWorker {
+            BitBoard bb;
+            // A best-reply layer holds the moves of up to four opponents
+            final int[][] moveStack = new int[MAX_PLY][MAX_MOVES * (BitBoard.MAX_PLAYERS - 1)]; // [ply][move]
+            final int[][] scoreStack = new int[MAX_PLY][MAX_MOVES * (BitBoard.MAX_PLAYERS - 1)]; // [ply][move] ordering
+            final int[][] valueStack = new int[MAX_PLY + 1][BitBoard.MAX_PLAYERS]; // [ply][player] max-n utilities
+            private final int[] replyBuffer = new int[MAX_MOVES];
+            long nodes;
+            long aspirationFails; // root re-searches after a score left the aspiration window
+            long lmrReductions, lmrResearches; // reduced searches, and those searched again at full depth
+            long nullTries, nullCutoffs; // null-move searches, and those that pruned the node
+            long quiescenceNodes; // nodes searched past the horizon
+            int completedDepth; // deepest finished iteration
+            boolean rootWin;
+            int rootBest;
+            int rootValue;
+            boolean hasRootValue;
+            boolean pondering; // ply 1 is the pondered player's own move, not a best-reply layer
+
+            // Move ordering heuristics, learned from beta cutoffs
+            final int[][] killers = new int[MAX_PLY][2]; // [ply] two quiet cutoff moves
+            final int[] playedMove = new int[MAX_PLY]; // [ply] move being searched, for counter-moves
+            final int[] counterMoves = new int[1 << 13]; // [previous move code] reply that cut off
+            final int[][] history = new int[BitBoard.MAX_PLAYERS][65 * 64]; // [player][from or 64][to]
+
+            void reset(BitBoard bb) {
+                this.bb = bb;
+                this.nodes = 0;
+                this.aspirationFails = 0;
+                this.lmrReductions = this.lmrResearches = 0;
+                this.nullTries = this.nullCutoffs = 0;
+                this.quiescenceNodes = 0;
+                this.completedDepth = 0;
+                this.rootWin = false;
+                this.hasRootValue = false;
+                this.pondering = false;
+                for (int[] k : killers)
+                    java.util.Arrays.fill(k, 0);
+                // Keep what was learned last move, but let this search outweigh it
+                for (int[] h : history)
+                    for (int i = 0; i < h.length; i++)
+                        h[i] >>= 2;
+            }
 
-            // Scanning windows of length 5 (target)
-            // For each direction, check windows
-            int[][] dirs = { { 0, 1 }, { 1, 0 }, { 1, 1 }, { 1, -1 } };
-            for (int[] d : dirs) {
-                int dr = d[0], dc = d[1];
-                for (int r = 0; r < 8; r++) {
-                    for (int c = 0; c < 8; c++) {
-                        // only evaluate if window fits
-                        if (r + dr * (n - 1) < 0 || r + dr * (n - 1) >= 8 || c + dc * (n - 1) < 0
-                                || c + dc * (n - 1) >= 8)
-                            continue;
-                        score += windowScore(grid, r, c, dr, dc, me, n);
+            /**
+             * Orders an inner node's moves without playing them: the transposition
+             * table move first, then killers for this ply, then the counter-move to the
+             * previous move, then by history score with center control and contact
+             * with other pieces as tie-breakers.
+             * 
+             * @return The number of moves to search
+             */
+            int orderMoves(int[] moves, int[] scores, int n, int mover, int ply, int ttMove) {
+                int k0 = killers[ply][0], k1 = killers[ply][1];
+                int counter = counterMoves[Move.plain(playedMove[ply - 1])];
+                for (int i = 0; i < n; i++) {
+                    int m = moves[i];
+                    int[] hist = history[Move.mover(m, mover)];
+                    int score;
+                    if (Move.plain(m) == ttMove)
+                        score = 1 << 30;
+                    else if (m == k0)
+                        score = 1 << 29;
+                    else if (m == k1)
+                        score = (1 << 29) - 1;
+                    else if (m == counter)
+                        score = 1 << 28;
+                    else
+                        score = Math.min(hist[historyIndex(m)], 1 << 22) * 16 + centerScore(Move.to(m))
+                                + 8 * Long.bitCount(BitBoard.NEIGHBORS[Move.to(m)] & bb.occupied);
+                    scores[i] = score;
+                }
+                sortMoves(moves, scores, n);
+                return capMoves(n);
+            }
+
+            /** Rewards a move that caused a beta cutoff in every ordering table. */
+            void recordCutoff(int m, int mover, int ply, int depth) {
+                if (killers[ply][0] != m) {
+                    killers[ply][1] = killers[ply][0];
+                    killers[ply][0] = m;
+                }
+                counterMoves[Move.plain(playedMove[ply - 1])] = m;
+                int i = historyIndex(m);
+                int[] hist = history[Move.mover(m, mover)];
+                hist[i] = Math.min(hist[i] + depth * depth, 1 << 26);
+            }
+
+            /**
+             * Runs one iteration of the root search inside an aspiration window around
+             * the previous iteration's score, widening it and searching again whenever
+             * the result falls outside. Leaves the best move first in moveStack[0] and
+             * its score in rootValue; rootWin and rootBest are set if a move wins at once.
+             */
+            void searchIteration(Game game, int me, int count, int depth, TimeManager time) {
+                long delta = ASPIRATION_WINDOW;
+                int alpha = Integer.MIN_VALUE / 2, beta = Integer.MAX_VALUE / 2;
+                if (depth > 1 && hasRootValue && activeMode != MAX_N) {
+                    alpha = clampScore(rootValue - delta);
+                    beta = clampScore(rootValue + delta);
+                }
+                while (true) {
+                    int val = searchRoot(game, me, count, depth, alpha, beta, time);
+                    if (rootWin)
+                        return;
+                    if (val <= alpha && alpha > Integer.MIN_VALUE / 2) {
+                        delta *= 4;
+                        alpha = clampScore((long) val - delta);
+                        aspirationFails++;
+                    } else if (val >= beta && beta < Integer.MAX_VALUE / 2) {
+                        delta *= 4;
+                        beta = clampScore((long) val + delta);
+                        aspirationFails++;
+                    } else {
+                        rootValue = val;
+                        hasRootValue = true;
+                        completedDepth = depth;
+                        return;
+                    }
+                }
+            }
+
+            /**
+             * Searches every root move (moveStack[0]) to the given depth with
+             * principal variation search: the first move gets the full window, the
+             * rest a null window that is only widened when they beat the best so far.
+             * A move that beats alpha is moved to the front for the next iteration.
+             * 
+             * @return The best root score, a bound if it is outside alpha..beta
+             */
+            int searchRoot(Game game, int me, int count, int depth, int alpha, int beta, TimeManager time) {
+                int[] ordered = moveStack[0];
+                int nextIndex = (game.currentPlayerIndex + 1) % game.players.length;
+                int currentBest = -1;
+                int bestVal = Integer.MIN_VALUE;
+                int bestCenter = Integer.MIN_VALUE;
+
+                // Root level of Alpha-Beta
+                for (int i = 0; i < count; i++) {
+                    if (stopHelpers || time.outOfTime())
+                        throw new TimeoutException();
+
+                    int m = ordered[i];
+                    playedMove[0] = m;
+                    applyMove(bb, m, me);
+
+                    // If immediate win, take it
+                    if (wins(bb, me, Move.to(m))) {
+                        undoMove(bb, m, me); // Be tidy
+                        rootWin = true;
+                        rootBest = m;
+                        return Integer.MAX_VALUE / 2;
+                    }
+
+                    // Positional tie-breaker, so the child's window is shifted by it
+                    int center = centerScore(Move.to(m));
+                    int a = Math.max(alpha, bestVal) - center, b = beta - center;
+                    int val;
+                    try {
+                        if (activeMode == MAX_N) {
+                            // Bound one below the best utility, so moves that tie it are searched exactly;
+                            // nothing to prune against before the first move
+                            int bound = currentBest < 0 ? 0 : Math.max(0, Math.min(bestVal, MAXN_TOTAL) - 1);
+                            maxN(game, nextIndex, depth - 1, 1, bound, time);
+                            int utility = valueStack[1][me];
+                            val = utility >= MAXN_TOTAL ? WIN_SCORE + 1 : utility;
+                        } else if (currentBest < 0) {
+                            val = alphaBeta(game, nextIndex, me, depth - 1, 1, a, b, time);
+                        } else {
+                            val = alphaBeta(game, nextIndex, me, depth - 1, 1, a, a + 1, time);
+                            if (val > a && val < b)
+                                val = alphaBeta(game, nextIndex, me, depth - 1, 1, a, b, time);
+                        }
+                    } finally {
+                        undoMove(bb, m, me); // BACKTRACK
+                    }
+                    // Max-n values are utilities, in other units: there the centre only breaks ties
+                    if (activeMode != MAX_N)
+                        val += center;
+
+                    if (val > bestVal || (activeMode == MAX_N && val == bestVal && center > bestCenter)) {
+                        bestVal = val;
+                        bestCenter = center;
+                        currentBest = i;
+                    }
+                    if (bestVal >= beta)
+                        break;
+                }
+
+                if (currentBest >= 0 && bestVal > alpha) {
+                    // Optimization: Move best move to front for next iteration
+                    moveToFront(ordered, scoreStack[0], currentBest);
+                }
+                return bestVal;
+            }
+
+            /**
+             * Alpha-beta pruning minimax algorithm for game tree search.
+             * Moves and their ordering scores live in the preallocated per-ply stacks,
+             * so a node allocates nothing.
+             * 
+             * @param game        The current game state
+             * @param playerIndex The current player's index
+             * @param me          This AI player's index
+             * @param depth       Remaining search depth
+             * @param ply         Distance from the root (index into the move stacks)
+             * @param alpha       Alpha value for pruning
+             * @param beta        Beta value for pruning
+             * @param time        Time budget of the search
+             * @return The evaluated score for this position
+             */
+            private int alphaBeta(Game game, int playerIndex, int me, int depth, int ply, int alpha, int beta,
+                    TimeManager time) {
+                // The clock is only read every few thousand nodes
+                if (stopHelpers || ((++nodes & TimeManager.POLL_MASK) == 0 && time.outOfTime()))
+                    throw new TimeoutException();
+
+                // Wins are detected by the parent right after each move, so a node only
+                // needs to handle the horizon
+                if (depth <= 0)
+                    return quiescence ? quiesce(game, playerIndex, me, ply, 0, alpha, beta, time)
+                            : evaluatePosition(game, bb, me);
+
+                // Transposition table: reuse results from earlier visits of this position
+                // or any symmetric one; moves are stored in the canonical orientation
+                int sym = bb.canonicalSymmetry();
+                long key = bb.symmetricKey(sym, playerIndex);
+                long entry = tt.probe(key);
+                int ttMove = 0;
+                if (entry != 0) {
+                    ttMove = Move.transform(TranspositionTable.moveOf(entry), BitBoard.INVERSE[sym]);
+                    if (TranspositionTable.depthOf(entry) >= depth) {
+                        int ttScore = TranspositionTable.scoreOf(entry);
+                        int flag = TranspositionTable.flagOf(entry);
+                        if (flag == TranspositionTable.EXACT
+                                || (flag == TranspositionTable.LOWER && ttScore >= beta)
+                                || (flag == TranspositionTable.UPPER && ttScore <= alpha))
+                            return ttScore;
                     }
                 }
+                int alphaOrig = alpha, betaOrig = beta;
+
+                boolean placement = isPlacementPhase(bb);
+                boolean maximize = (playerIndex == me);
+                // Best-reply search: one min layer answers with any single opponent,
+                // the others pass, and then it is this AI's turn again. A ponder
+                // search's first layer is the player actually on move, alone.
+                boolean ponderMove = pondering && ply == 1 && activeMode == BEST_REPLY;
+                boolean bestReply = !maximize && activeMode == BEST_REPLY && !ponderMove;
+
+                int[] moves = moveStack[ply];
+                int n = bestReply ? generateReplies(bb, me, game.players.length, placement, moves)
+                        : generateMoves(bb, playerIndex, placement, moves);
+                if (n == 0)
+                    return evaluatePosition(game, bb, me);
+
+                int nextIndex = bestReply || ponderMove ? me : (playerIndex + 1) % game.players.length;
+
+                // Null move: if passing still fails high (max) or low (min) at reduced
+                // depth, a real move will too. Placement only: in the movement phase
+                // passing is illegal and being forced to move can hurt. Never two in a row.
+                if (nullMovePruning && placement && depth >= 3 && playedMove[ply - 1] != 0
+                        && (maximize ? beta < WIN_SCORE && evaluatePosition(game, bb, me) >= beta
+                                : alpha > -WIN_SCORE && evaluatePosition(game, bb, me) <= alpha)) {
+                    nullTries++;
+                    playedMove[ply] = 0;
+                    int reduced = depth - 1 - NULL_MOVE_R;
+                    int val = maximize
+                            ? alphaBeta(game, nextIndex, me, reduced, ply + 1, beta - 1, beta, time)
+                            : alphaBeta(game, nextIndex, me, reduced, ply + 1, alpha, alpha + 1, time);
+                    if (maximize ? val >= beta && val < WIN_SCORE : val <= alpha && val > -WIN_SCORE) {
+                        nullCutoffs++;
+                        return val;
+                    }
+                }
+
+                n = orderMoves(moves, scoreStack[ply], n, playerIndex, ply, ttMove);
+                int best = maximize ? Integer.MIN_VALUE / 2 : Integer.MAX_VALUE / 2;
+                int bestMove = 0;
+
+                for (int i = 0; i < n; i++) {
+                    int m = moves[i];
+                    int mover = Move.mover(m, playerIndex);
+                    playedMove[ply] = m;
+                    applyMove(bb, m, mover);
+                    int val;
+                    try {
+                        if (wins(bb, mover, Move.to(m))) {
+                            val = terminalScore(game, bb, me, mover, depth - 1);
+                        } else if (i == 0) {
+                            val = alphaBeta(game, nextIndex, me, depth - 1, ply + 1, alpha, beta, time);
+                        } else {
+                            // Late-move reduction: quiet moves deep in the ordering are first
+                            // searched shallower, and again at full depth only if they look good
+                            int reduction = 0;
+                            if (lateMoveReductions && i >= LMR_MIN_INDEX && depth >= 3
+                                    && scoreStack[ply][i] < QUIET_SCORE_LIMIT) {
+                                reduction = (i >= 2 * LMR_MIN_INDEX && depth >= 5) ? 2 : 1;
+                                lmrReductions++;
+                            }
+                            if (maximize) {
+                                // PVS: prove the move is no better than alpha, re-search if it is
+                                val = alphaBeta(game, nextIndex, me, depth - 1 - reduction, ply + 1, alpha,
+                                        alpha + 1, time);
+                                if (reduction > 0 && val > alpha) {
+                                    lmrResearches++;
+                                    val = alphaBeta(game, nextIndex, me, depth - 1, ply + 1, alpha, alpha + 1,
+                                            time);
+                                }
+                                if (val > alpha && val < beta)
+                                    val = alphaBeta(game, nextIndex, me, depth - 1, ply + 1, alpha, beta, time);
+                            } else {
+                                val = alphaBeta(game, nextIndex, me, depth - 1 - reduction, ply + 1, beta - 1,
+                                        beta, time);
+                                if (reduction > 0 && val < beta) {
+                                    lmrResearches++;
+                                    val = alphaBeta(game, nextIndex, me, depth - 1, ply + 1, beta - 1, beta,
+                                            time);
+                                }
+                                if (val < beta && val > alpha)
+                                    val = alphaBeta(game, nextIndex, me, depth - 1, ply + 1, alpha, beta, time);
+                            }
+                        }
+                    } finally {
+                        undoMove(bb, m, mover); // BACKTRACK
+                    }
+                    if (maximize) {
+                        if (bestMove == 0 || val > best) {
+                            best = val;
+                            bestMove = m;
+                        }
+                        alpha = Math.max(alpha, best);
+                    } else {
+                        if (bestMove == 0 || val < best) {
+                            best = val;
+                            bestMove = m;
+                        }
+                        beta = Math.min(beta, best);
+                    }
+                    if (beta <= alpha) {
+                        recordCutoff(m, playerIndex, ply, depth);
+                        break;
+                    }
+                }
+
+                int flag = (best <= alphaOrig) ? TranspositionTable.UPPER
+                        : (best >= betaOrig) ? TranspositionTable.LOWER : TranspositionTable.EXACT;
+                tt.store(key, depth, flag, best, Move.transform(bestMove, sym));
+                return best;
+            }
+
+            /**
+             * Quiescence search at the horizon: only forcing moves are searched, so no
+             * leaf is scored halfway through a threat sequence. The player to move
+             * completes five if it can; if an opponent threatens five it may only
+             * block; otherwise it may stand pat on the static score or make a four
+             * (at most QS_MAX_MOVES of them). Stops after QS_MAX_PLY plies.
+             * Players move in turn order here, also in best-reply search.
+             * 
+             * @param qply Plies past the horizon
+             * @return The score of the position for me, a bound outside alpha..beta
+             */
+            private int quiesce(Game game, int playerIndex, int me, int ply, int qply, int alpha, int beta,
+                    TimeManager time) {
+                if (qply > 0) {
+                    quiescenceNodes++;
+                    if (stopHelpers || ((++nodes & TimeManager.POLL_MASK) == 0 && time.outOfTime()))
+                        throw new TimeoutException();
+                }
+                int stand = evaluatePosition(game, bb, me);
+                boolean placement = isPlacementPhase(bb);
+                if (qply >= QS_MAX_PLY || ply >= MAX_PLY - 1 || (placement && bb.count(playerIndex) >= 8))
+                    return stand;
+                int[] moves = moveStack[ply];
+
+                // Completing five ends the game
+                long fives = bb.eval.emptiesOfWindows(bb, playerIndex, 4);
+                if (fives != 0) {
+                    int n = forcingMoves(playerIndex, fives, placement, moves);
+                    for (int i = 0; i < n; i++) {
+                        applyMove(bb, moves[i], playerIndex);
+                        boolean won = wins(bb, playerIndex, Move.to(moves[i]));
+                        undoMove(bb, moves[i], playerIndex);
+                        if (won)
+                            return terminalScore(game, bb, me, playerIndex, -qply);
+                    }
+                }
+
+                boolean maximize = (playerIndex == me);
+                long threats = 0;
+                for (int p = 0; p < game.players.length; p++)
+                    if (p != playerIndex)
+                        threats |= reachableFives(p, placement);
+                int best;
+                int n = threats != 0 ? forcingMoves(playerIndex, threats, placement, moves) : 0;
+                if (n > 0) {
+                    // Forced to block: standing pat would lose
+                    best = maximize ? Integer.MIN_VALUE / 2 : Integer.MAX_VALUE / 2;
+                } else {
+                    // No threat, or one that cannot be blocked: the static score stands
+                    if (maximize ? stand >= beta : stand <= alpha)
+                        return stand;
+                    if (maximize)
+                        alpha = Math.max(alpha, stand);
+                    else
+                        beta = Math.min(beta, stand);
+                    if (threats != 0)
+                        return stand;
+                    best = stand;
+                    long threes = bb.eval.emptiesOfWindows(bb, playerIndex, 3);
+                    n = Math.min(forcingMoves(playerIndex, threes, placement, moves), QS_MAX_MOVES);
+                    if (n == 0)
+                        return stand;
+                }
+
+                int nextIndex = (playerIndex + 1) % game.players.length;
+                for (int i = 0; i < n; i++) {
+                    int m = moves[i];
+                    applyMove(bb, m, playerIndex);
+                    int val;
+                    try {
+                        val = wins(bb, playerIndex, Move.to(m)) ? terminalScore(game, bb, me, playerIndex, -qply - 1)
+                                : quiesce(game, nextIndex, me, ply + 1, qply + 1, alpha, beta, time);
+                    } finally {
+                        undoMove(bb, m, playerIndex); // BACKTRACK
+                    }
+                    if (maximize ? val > best : val < best)
+                        best = val;
+                    if (maximize)
+                        alpha = Math.max(alpha, best);
+                    else
+                        beta = Math.min(beta, best);
+                    if (beta <= alpha)
+                        break;
+                }
+                return best;
+            }
+
+            /**
+             * Squares where the player can complete five on their next move: the
+             * empty squares of their 4-of-5 windows, provided they still have a
+             * placement left, or in the movement phase an adjacent piece whose step
+             * there completes the line (stepping one of the four away does not).
+             */
+            private long reachableFives(int player, boolean placement) {
+                long fives = bb.eval.emptiesOfWindows(bb, player, 4);
+                if (placement)
+                    return bb.count(player) < 8 ? fives : 0; // PLACEMENT_LIMIT
+                long reachable = 0;
+                for (long c = fives; c != 0; c &= c - 1) {
+                    int to = Long.numberOfTrailingZeros(c);
+                    for (long from = BitBoard.NEIGHBORS[to] & bb.pieces[player]; from != 0; from &= from - 1) {
+                        int f = Long.numberOfTrailingZeros(from);
+                        bb.move(player, f, to);
+                        boolean won = bb.winsThrough(player, to);
+                        bb.move(player, to, f);
+                        if (won) {
+                            reachable |= 1L << to;
+                            break;
+                        }
+                    }
+                }
+                return reachable;
+            }
+
+            /**
+             * The player's moves onto the target squares: placements, or steps of an
+             * adjacent piece in the movement phase.
+             */
+            private int forcingMoves(int player, long targets, boolean placement, int[] out) {
+                int n = 0;
+                for (targets &= ~bb.occupied; targets != 0; targets &= targets - 1) {
+                    int to = Long.numberOfTrailingZeros(targets);
+                    if (placement) {
+                        out[n++] = Move.placementCode(to);
+                    } else {
+                        for (long from = BitBoard.NEIGHBORS[to] & bb.pieces[player]; from != 0; from &= from - 1)
+                            out[n++] = Move.stepCode(Long.numberOfTrailingZeros(from), to);
+                    }
+                }
+                return n;
+            }
+
+            /**
+             * Moves of a best-reply layer: every opponent's legal moves, each tagged
+             * with the opponent making it.
+             */
+            private int generateReplies(BitBoard bb, int me, int players, boolean placement, int[] out) {
+                int n = 0;
+                for (int p = 0; p < players; p++) {
+                    if (p == me)
+                        continue;
+                    int k = generateMoves(bb, p, placement, replyBuffer);
+                    for (int i = 0; i < k; i++)
+                        out[n++] = Move.withMover(replyBuffer[i], p);
+                }
+                return n;
+            }
+
+            /**
+             * Max-n search: the player to move picks the child with the highest
+             * utility for itself. Utilities are non-negative and add up to at most
+             * MAXN_TOTAL, which allows shallow pruning: once this player is sure of u,
+             * the parent's mover gets at most MAXN_TOTAL - u here, and if that is no
+             * better than what it already has, the remaining moves are skipped.
+             * Leaves every player's utility in valueStack[ply].
+             * 
+             * @param game        The current game state
+             * @param playerIndex The player to move
+             * @param depth       Remaining search depth
+             * @param ply         Distance from the root
+             * @param bound       Utility the parent's mover already has elsewhere
+             * @param time        Time budget of the search
+             */
+            private void maxN(Game game, int playerIndex, int depth, int ply, int bound, TimeManager time) {
+                if (stopHelpers || ((++nodes & TimeManager.POLL_MASK) == 0 && time.outOfTime()))
+                    throw new TimeoutException();
+                int players = game.players.length;
+                int[] result = valueStack[ply];
+                if (depth <= 0) {
+                    utilities(bb, players, result);
+                    return;
+                }
+                int[] moves = moveStack[ply];
+                int n = generateMoves(bb, playerIndex, isPlacementPhase(bb), moves);
+                if (n == 0) {
+                    utilities(bb, players, result);
+                    return;
+                }
+                n = orderMoves(moves, scoreStack[ply], n, playerIndex, ply, 0);
+                int nextIndex = (playerIndex + 1) % players;
+                int[] child = valueStack[ply + 1];
+                int best = -1;
+
+                for (int i = 0; i < n; i++) {
+                    int m = moves[i];
+                    playedMove[ply] = m;
+                    applyMove(bb, m, playerIndex);
+                    try {
+                        if (wins(bb, playerIndex, Move.to(m))) {
+                            java.util.Arrays.fill(child, 0, players, 0);
+                            child[playerIndex] = MAXN_TOTAL;
+                        } else {
+                            maxN(game, nextIndex, depth - 1, ply + 1, Math.max(best, 0), time);
+                        }
+                    } finally {
+                        undoMove(bb, m, playerIndex); // BACKTRACK
+                    }
+                    if (child[playerIndex] > best) {
+                        best = child[playerIndex];
+                        System.arraycopy(child, 0, result, 0, players);
+                    }
+                    if (maxNPruning && best >= MAXN_TOTAL - bound) {
+                        recordCutoff(m, playerIndex, ply, depth);
+                        break;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Max-n utilities: MAXN_TOTAL shared out in proportion to each player's
+         * heuristic total (plus one, so every share is positive).
+         */
+        private static void utilities(BitBoard bb, int players, int[] out) {
+            int[] totals = totals(bb);
+            long sum = 0;
+            for (int p = 0; p < players; p++)
+                sum += Math.max(0, totals[p]) + 1;
+            for (int p = 0; p < players; p++)
+                out[p] = (int) ((Math.max(0, totals[p]) + 1L) * MAXN_TOTAL / sum);
+        }
+
+        /**
+         * Generates all legal moves for the given player in the current position.
+         * Placements come from the empty-square mask; steps from each piece's
+         * neighbour mask. Both are produced in ascending square order.
+         * 
+         * @param bb        The bitboard position
+         * @param player    The player index to generate moves for
+         * @param placement true during the placement phase
+         * @param out       Receives the encoded moves (at least MAX_MOVES long)
+         * @return The number of moves written
+         */
+        static int generateMoves(BitBoard bb, int player, boolean placement, int[] out) {
+            int n = 0;
+            if (placement) {
+                if (bb.count(player) >= 8) // PLACEMENT_LIMIT
+                    return 0;
+                long empty = ~bb.occupied;
+                while (empty != 0) {
+                    int sq = Long.numberOfTrailingZeros(empty);
+                    empty &= empty - 1;
+                    out[n++] = Move.placementCode(sq);
+                }
+            } else {
+                long own = bb.pieces[player];
+                while (own != 0) {
+                    int from = Long.numberOfTrailingZeros(own);
+                    own &= own - 1;
+                    long targets = BitBoard.NEIGHBORS[from] & ~bb.occupied;
+                    while (targets != 0) {
+                        int to = Long.numberOfTrailingZeros(targets);
+                        targets &= targets - 1;
+                        out[n++] = Move.stepCode(from, to);
+                    }
+                }
+            }
+            return n;
+        }
+
+        static boolean isPlacementPhase(BitBoard bb) {
+            for (int p = 0; p < bb.pieces.length; p++) {
+                if (bb.count(p) < 8) // PLACEMENT_LIMIT
+                    return true;
+            }
+            return false;
+        }
+
+        /**
+         * Finds an immediate winning move for the specified player.
+         * 
+         * @param bb        The bitboard position
+         * @param player    The player index
+         * @param placement true during the placement phase
+         * @return An encoded winning move if one exists, otherwise 0
+         */
+        private int findWinningMove(BitBoard bb, int player, boolean placement) {
+            return ThreatMap.firstWin(bb.pieces[player], bb.occupied, bb.count(player) < 8, placement);
+        }
+
+        /**
+         * Finds the best blocking move to prevent all opponents from winning.
+         * Evaluates which move minimizes the number of opponent winning threats,
+         * counted on the threat map of the position after the move.
+         * 
+         * @param game      The current game state
+         * @param bb        The bitboard position
+         * @param me        This AI player's index
+         * @param placement true during the placement phase
+         * @return The encoded best blocking move, or 0 if no threats exist
+         */
+        private int findBestBlockAnyOpponent(Game game, BitBoard bb, int me, boolean placement) {
+            boolean threat = false;
+            for (int opp = 0; opp < game.players.length && !threat; opp++) {
+                if (opp != me && findWinningMove(bb, opp, placement) != 0)
+                    threat = true;
+            }
+            if (!threat)
+                return 0;
+
+            int[] myMoves = new int[MAX_MOVES];
+            int myCount = generateMoves(bb, me, placement, myMoves);
+            int best = 0;
+            int bestThreats = Integer.MAX_VALUE;
+            // Placing my last piece ends the placement phase if everyone else is done
+            boolean othersPlaced = true;
+            for (int p = 0; p < game.players.length; p++)
+                if (p != me && bb.count(p) < 8)
+                    othersPlaced = false;
+
+            for (int i = 0; i < myCount; i++) {
+                int mm = myMoves[i];
+                long to = 1L << Move.to(mm);
+                long occupied = Move.isPlacement(mm) ? bb.occupied | to
+                        : (bb.occupied & ~(1L << Move.from(mm))) | to;
+                boolean phase2 = placement && !(othersPlaced && bb.count(me) + 1 >= 8);
+
+                int threats = 0;
+                for (int opp = 0; opp < game.players.length; opp++) {
+                    if (opp != me)
+                        threats += ThreatMap.countWins(bb.pieces[opp], occupied, bb.count(opp) < 8, phase2);
+                }
+                if (threats < bestThreats) {
+                    bestThreats = threats;
+                    best = mm;
+                    if (bestThreats == 0)
+                        break;
+                }
+            }
+            return best;
+        }
+
+        /**
+         * Selects the best move using a simple heuristic evaluation.
+         * Used for MEDIUM difficulty.
+         * 
+         * @param game  The current game state
+         * @param bb    The bitboard position
+         * @param me    This AI player's index
+         * @param moves Encoded candidate moves
+         * @param n     Number of candidates
+         * @return The encoded move with the highest heuristic score
+         */
+        private int pickBestHeuristic(Game game, BitBoard bb, int me, int[] moves, int n) {
+            int best = 0;
+            int bestScore = Integer.MIN_VALUE;
+            for (int i = 0; i < n; i++) {
+                applyMove(bb, moves[i], me);
+                int score = evaluatePosition(game, bb, me) + centerScore(Move.to(moves[i]));
+                undoMove(bb, moves[i], me);
+                if (score > bestScore) {
+                    bestScore = score;
+                    best = moves[i];
+                }
+            }
+            return (best != 0) ? best : moves[rand.nextInt(n)];
+        }
+
+        private int terminalScore(Game game, BitBoard bb, int me, int winner, int depthRemaining) {
+            if (winner == me)
+                return 1_000_000_000 - (100 * (100 - depthRemaining));
+            if (winner >= 0)
+                return -1_000_000_000 + (100 * (100 - depthRemaining));
+            return evaluatePosition(game, bb, me);
+        }
+
+        /**
+         * Scores each root move by the evaluation after playing it, sorts the moves
+         * best first and puts the transposition-table move in front. Only the root
+         * pays for a full evaluation per move; inner nodes use
+         * {@link SearchWorker#orderMoves}.
+         * 
+         * @param bias Optional per-move score adjustment, aligned with the unsorted moves
+         * @return The number of moves to search
+         */
+        private int orderRootMoves(Game game, BitBoard bb, int[] moves, int[] scores, int n, int me, int ttMove,
+                int[] bias) {
+            for (int i = 0; i < n; i++) {
+                int m = moves[i];
+                applyMove(bb, m, me);
+                int score = evaluatePosition(game, bb, me) + centerScore(Move.to(m));
+                undoMove(bb, m, me); // Backtrack
+                if (bias != null)
+                    score += bias[i];
+                scores[i] = score;
+            }
+            sortMoves(moves, scores, n);
+
+            // The transposition table's best move is searched first (and never capped away)
+            if (ttMove != 0) {
+                for (int i = 1; i < n; i++) {
+                    if (moves[i] == ttMove) {
+                        moveToFront(moves, scores, i);
+                        break;
+                    }
+                }
+            }
+            return capMoves(n);
+        }
+
+        /** Stable insertion sort of moves[0..n) by descending score, on the primitive arrays. */
+        private static void sortMoves(int[] moves, int[] scores, int n) {
+            for (int i = 1; i < n; i++) {
+                int m = moves[i], score = scores[i];
+                int j = i - 1;
+                while (j >= 0 && scores[j] < score) {
+                    moves[j + 1] = moves[j];
+                    scores[j + 1] = scores[j];
+                    j--;
+                }
+                moves[j + 1] = m;
+                scores[j + 1] = score;
+            }
+        }
+
+        /** Applies the optional move cap to an ordered list of n moves. */
+        private int capMoves(int n) {
+            return (moveCap > 0 && n > moveCap) ? moveCap : n;
+        }
+
+        /** Clamps a widened window bound to the search's score range. */
+        private static int clampScore(long score) {
+            return (int) Math.max(Integer.MIN_VALUE / 2, Math.min(Integer.MAX_VALUE / 2, score));
+        }
+
+        /** Butterfly index of a move: from-square (64 for a placement) by to-square. */
+        private static int historyIndex(int m) {
+            return (Move.isPlacement(m) ? 64 : Move.from(m)) * 64 + Move.to(m);
+        }
+
+        /** Shifts moves[0..i) right by one and puts moves[i] first. */
+        private static void moveToFront(int[] moves, int[] scores, int i) {
+            int m = moves[i], s = scores[i];
+            System.arraycopy(moves, 0, moves, 1, i);
+            System.arraycopy(scores, 0, scores, 1, i);
+            moves[0] = m;
+            scores[0] = s;
+        }
+
+        /**
+         * Evaluates the overall position from the AI's perspective.
+         * Balances offensive potential with defensive threats.
+         * 
+         * @param game The current game state
+         * @param bb   The bitboard position
+         * @param me   This AI player's index
+         * @return The heuristic score (higher is better for the AI)
+         */
+        private int evaluatePosition(Game game, BitBoard bb, int me) {
+            // Heuristic score: My Score - (Opponent Max Score * 0.9)
+            // We want to be aggressive but also respect enemy threats.
+
+            // Per-player heuristics are maintained incrementally by bb.eval (or bb.nnue)
+            assert evalMatchesFullScan(bb) : "incremental evaluation drifted from full rescan";
+            int[] totals = totals(bb);
+
+            // Calculate my potential
+            int myScore = totals[me];
+
+            // Calculate opponent potentials
+            int oppMax = 0;
+            for (int p = 0; p < game.players.length; p++) {
+                if (p == me)
+                    continue;
+                oppMax = Math.max(oppMax, totals[p]);
+            }
+
+            return myScore - (int) (0.9 * oppMax);
+        }
+
+        private int centerScore(int sq) {
+            // Favor center (3,3)-(4,4)
+            int c = sq & 7, r = sq >>> 3;
+            int dc = Math.abs(c - 3) + Math.abs(c - 4);
+            int dr = Math.abs(r - 3) + Math.abs(r - 4);
+            return 50 - (dc + dr) * 5;
+        }
+
+        /** Per-player totals: the network's outputs when the board has an accumulator, else the window heuristic. */
+        private static int[] totals(BitBoard bb) {
+            return bb.nnue != null ? bb.nnue.evaluate() : bb.eval.totals;
+        }
+
+        /** Debug check (run only with -ea) that every incremental total equals a full rescan. */
+        private boolean evalMatchesFullScan(BitBoard bb) {
+            if (bb.nnue != null && !bb.nnue.matchesRefresh(bb))
+                return false;
+            int[] totals = new int[bb.pieces.length];
+            FullEvaluator.preferred().evaluate(bb.pieces, bb.occupied, totals);
+            return java.util.Arrays.equals(totals, bb.eval.totals);
+        }
+
+        private void applyMove(BitBoard bb, int m, int player) {
+            if (Move.isPlacement(m))
+                bb.place(player, Move.to(m));
+            else
+                bb.move(player, Move.from(m), Move.to(m));
+            if (bb.nnue != null)
+                bb.nnue.apply(player, m, 1);
+        }
+
+        private void undoMove(BitBoard bb, int m, int player) {
+            if (Move.isPlacement(m))
+                bb.remove(player, Move.to(m));
+            else
+                bb.move(player, Move.to(m), Move.from(m));
+            if (bb.nnue != null)
+                bb.nnue.apply(player, m, -1);
+        }
+
+        /**
+         * Checks whether the move just played to sq won the game for player.
+         * Only the lines through sq are examined; with assertions enabled (-ea)
+         * the result is cross-checked against a full-board scan.
+         */
+        private boolean wins(BitBoard bb, int player, int sq) {
+            boolean won = bb.winsThrough(player, sq);
+            assert won == (winnerIndex(bb) == player) : "incremental win check disagrees with full scan";
+            return won;
+        }
+
+        /**
+         * Full scan: returns the index of a player with five in a row, or -1.
+         * Only used by the debug assertion in wins().
+         */
+        private int winnerIndex(BitBoard bb) {
+            for (int p = 0; p < bb.pieces.length; p++) {
+                if (BitBoard.hasLine(bb.pieces[p], BitBoard.CONNECT))
+                    return p;
+            }
+            return -1;
+        }
+    }
+
+    // =========================
+    // Board
+    // =========================
+    /**
+     * Represents the 8x8 game board grid.
+     * Handles placement and movement validation logic.
+     */
+    static class Board {
+        char[][] grid = new char[8][8];
+
+        /**
+         * Initializes the board grid by filling all cells with the EMPTY symbol.
+         */
+        public void initializeBoard() {
+            for (char[] row : grid)
+                java.util.Arrays.fill(row, EMPTY);
+        }
+
+        /**
+         * Places a piece on the board at the specified position.
+         * 
+         * @param pos    Array containing [column, row]
+         * @param symbol The player's symbol
+         * @return true if placement was successful, false if invalid
+         */
+        public boolean placePiece(int[] pos, char symbol) {
+            int c = pos[0], r = pos[1];
+            if (c < 0 || c >= 8 || r < 0 || r >= 8)
+                return false;
+            if (grid[r][c] != EMPTY)
+                return false;
+            grid[r][c] = symbol;
+            return true;
+        }
+
+        /**
+         * Moves a piece from one position to an adjacent position.
+         * Only allows moves of 1 square in any direction (including diagonals).
+         * 
+         * @param from   Array containing source [column, row]
+         * @param to     Array containing destination [column, row]
+         * @param symbol The player's symbol
+         * @return true if move was successful, false if invalid
+         */
+        public boolean movePiece(int[] from, int[] to, char symbol) {
+            int fc = from[0], fr = from[1], tc = to[0], tr = to[1];
+            if (fc < 0 || fc >= 8 || fr < 0 || fr >= 8)
+                return false;
+            if (tc < 0 || tc >= 8 || tr < 0 || tr >= 8)
+                return false;
+            if (grid[fr][fc] != symbol)
+                return false;
+            if (grid[tr][tc] != EMPTY)
+                return false;
+
+            int dc = Math.abs(tc - fc);
+            int dr = Math.abs(tr - fr);
+            if (dc > 1 || dr > 1 || (dc == 0 && dr == 0))
+                return false;
+
+            grid[fr][fc] = EMPTY;
+            grid[tr][tc] = symbol;
+            return true;
+        }
+
+        /**
+         * Converts board coordinates to chess-style notation (e.g., "A1", "H8").
+         * 
+         * @param c Column index (0-7)
+         * @param r Row index (0-7)
+         * @return String representation (e.g., "A1")
+         */
+        public static String posToLabel(int c, int r) {
+            return "" + (char) ('A' + c) + (r + 1);
+        }
+    }
+
+    // =========================
+    // BitBoard
+    // =========================
+    /**
+     * Bitboard form of the 8x8 grid used by the AI search.
+     * Each player owns one 64-bit word in which bit (row * 8 + col) marks a piece,
+     * so move generation, piece counts and line detection become word operations.
+     * Players are addressed by their index in Game.players.
+     */
+    static class BitBoard {
+        static final long FILE_A = 0x0101010101010101L;
+        static final long FILE_H = 0x8080808080808080L;
+        static final long CENTER = 0x00003C3C3C3C0000L; // rows 2-5, columns 2-5
+
+        /** Window length used by the evaluation tables (every Game connects 5). */
+        static final int CONNECT = 5;
+        static final int WINDOWS = 96;
+        static final int MAX_PLAYERS = 5;
+
+        /** Squares one king-step away from each square. */
+        static final long[] NEIGHBORS = new long[64];
+
+        /** Cells of each five-cell window, plus the square before/after it (-1 if off the board). */
+        static final long[] WINDOW_MASK = new long[WINDOWS];
+        static final int[] WINDOW_BEFORE = new int[WINDOWS];
+        static final int[] WINDOW_AFTER = new int[WINDOWS];
+        /** Indices of the windows containing each square (at most 20). */
+        static final int[][] WINDOWS_THROUGH = new int[64][];
+        /** Windows whose score can change with each square: those containing it or flanked by it. */
+        static final int[][] WINDOWS_AFFECTED = new int[64][];
+        /**
+         * Bit of the square in each of its WINDOWS_AFFECTED windows, in the 7-bit
+         * pattern of the extended window: bit 0 the square before, bits 1-5 the
+         * cells, bit 6 the square after.
+         */
+        static final int[][] PATTERN_BIT = new int[64][];
+        /** Pattern bits of flanking squares that are off the board; they count as filled. */
+        static final int[] OFF_BOARD_FLANKS = new int[WINDOWS];
+
+        /**
+         * Zobrist keys per (player, square), per side to move and per player count.
+         * Generated from a fixed seed so hashes are stable between runs.
+         */
+        static final long[][] ZOBRIST = new long[MAX_PLAYERS][64];
+        static final long[] SIDE_KEYS = new long[MAX_PLAYERS];
+        static final long[] PLAYER_COUNT_KEYS = new long[MAX_PLAYERS + 1];
+
+        /**
+         * The 8 symmetries of the board (rotations and reflections). Symmetry t
+         * transposes the board if bit 2 is set, then flips it vertically if bit 1
+         * is set, then mirrors it horizontally if bit 0 is set. SYMMETRY[t][sq] is
+         * where sq goes; INVERSE[t] undoes t.
+         */
+        static final int SYMMETRIES = 8;
+        static final int[][] SYMMETRY = new int[SYMMETRIES][64];
+        static final int[] INVERSE = new int[SYMMETRIES];
+
+        static {
+            for (int t = 0; t < SYMMETRIES; t++)
+                for (int sq = 0; sq < 64; sq++)
+                    SYMMETRY[t][sq] = Long.numberOfTrailingZeros(transform(1L << sq, t));
+            for (int t = 0; t < SYMMETRIES; t++)
+                for (int u = 0; u < SYMMETRIES; u++)
+                    if (SYMMETRY[u][SYMMETRY[t][1]] == 1 && SYMMETRY[u][SYMMETRY[t][8]] == 8)
+                        INVERSE[t] = u; // squares 1 and 8 pin down a symmetry
+        }
+
+        static {
+            long seed = 0x9E3779B97F4A7C15L;
+            for (int p = 0; p < MAX_PLAYERS; p++)
+                for (int sq = 0; sq < 64; sq++)
+                    ZOBRIST[p][sq] = seed = splitMix(seed);
+            for (int p = 0; p < MAX_PLAYERS; p++)
+                SIDE_KEYS[p] = seed = splitMix(seed);
+            for (int n = 0; n <= MAX_PLAYERS; n++)
+                PLAYER_COUNT_KEYS[n] = seed = splitMix(seed);
+
+            for (int sq = 0; sq < 64; sq++) {
+                int r = sq >>> 3, c = sq & 7;
+                for (int dr = -1; dr <= 1; dr++)
+                    for (int dc = -1; dc <= 1; dc++) {
+                        if ((dr != 0 || dc != 0) && onBoard(c + dc, r + dr))
+                            NEIGHBORS[sq] |= 1L << square(c + dc, r + dr);
+                    }
+            }
+
+            // Same window order as the original grid scan: (dr, dc) per direction
+            int[][] dirs = { { 0, 1 }, { 1, 0 }, { 1, 1 }, { 1, -1 } };
+            int w = 0;
+            for (int[] d : dirs) {
+                int dr = d[0], dc = d[1];
+                for (int r = 0; r < 8; r++)
+                    for (int c = 0; c < 8; c++) {
+                        if (!onBoard(c + dc * (CONNECT - 1), r + dr * (CONNECT - 1)))
+                            continue;
+                        long mask = 0;
+                        for (int i = 0; i < CONNECT; i++)
+                            mask |= 1L << square(c + dc * i, r + dr * i);
+                        WINDOW_MASK[w] = mask;
+                        WINDOW_BEFORE[w] = onBoard(c - dc, r - dr) ? square(c - dc, r - dr) : -1;
+                        int ec = c + dc * CONNECT, er = r + dr * CONNECT;
+                        WINDOW_AFTER[w] = onBoard(ec, er) ? square(ec, er) : -1;
+                        w++;
+                    }
+            }
+
+            for (int sq = 0; sq < 64; sq++) {
+                int n = 0;
+                int[] tmp = new int[WINDOWS];
+                for (w = 0; w < WINDOWS; w++)
+                    if ((WINDOW_MASK[w] & (1L << sq)) != 0)
+                        tmp[n++] = w;
+                WINDOWS_THROUGH[sq] = java.util.Arrays.copyOf(tmp, n);
+                for (w = 0; w < WINDOWS; w++)
+                    if (WINDOW_BEFORE[w] == sq || WINDOW_AFTER[w] == sq)
+                        tmp[n++] = w;
+                WINDOWS_AFFECTED[sq] = java.util.Arrays.copyOf(tmp, n);
+                PATTERN_BIT[sq] = new int[n];
+                for (int i = 0; i < n; i++)
+                    PATTERN_BIT[sq][i] = 1 << patternCell(WINDOWS_AFFECTED[sq][i], sq);
+            }
+            for (w = 0; w < WINDOWS; w++)
+                OFF_BOARD_FLANKS[w] = (WINDOW_BEFORE[w] < 0 ? 1 : 0) | (WINDOW_AFTER[w] < 0 ? 1 << 6 : 0);
+        }
+
+        /** Position of sq in window w's extended pattern: 0 before, 1-5 the cells in order, 6 after. */
+        private static int patternCell(int w, int sq) {
+            if (WINDOW_BEFORE[w] == sq)
+                return 0;
+            if (WINDOW_AFTER[w] == sq)
+                return CONNECT + 1;
+            return 1 + Long.bitCount(WINDOW_MASK[w] & ((1L << sq) - 1));
+        }
+
+        final long[] pieces;
+        final char[] symbols;
+        long occupied;
+        // [t] Zobrist hash of the pieces seen through symmetry t ([0] is the plain
+        // hash), updated on every change
+        final long[] hashes;
+        final WindowEval eval; // per-player heuristic, updated on every change
+        NeuralEval.Accumulator nnue; // first network layer, kept by AIPlayer.applyMove/undoMove; else null
+
+        BitBoard(char[] symbols) {
+            this.symbols = symbols;
+            this.pieces = new long[symbols.length];
+            this.hashes = new long[SYMMETRIES];
+            java.util.Arrays.fill(hashes, PLAYER_COUNT_KEYS[symbols.length]);
+            this.eval = new WindowEval(symbols.length);
+        }
+
+        private BitBoard(BitBoard other) {
+            this.symbols = other.symbols;
+            this.pieces = other.pieces.clone();
+            this.occupied = other.occupied;
+            this.hashes = other.hashes.clone();
+            this.eval = new WindowEval(other.eval);
+            this.nnue = other.nnue == null ? null : new NeuralEval.Accumulator(other.nnue);
+        }
+
+        /** Independent copy for another search thread. */
+        BitBoard copy() {
+            return new BitBoard(this);
+        }
+
+        /**
+         * Builds the bitboard position of a game's current grid.
+         * 
+         * @param game The game to read
+         * @return A new BitBoard with one word per player
+         */
+        static BitBoard from(Game game) {
+            char[] syms = new char[game.players.length];
+            for (int i = 0; i < syms.length; i++)
+                syms[i] = game.players[i].symbol;
+            BitBoard bb = new BitBoard(syms);
+            for (int r = 0; r < 8; r++)
+                for (int c = 0; c < 8; c++) {
+                    int p = bb.indexOf(game.board.grid[r][c]);
+                    if (p >= 0)
+                        bb.place(p, square(c, r));
+                }
+            return bb;
+        }
+
+        static int square(int c, int r) {
+            return (r << 3) | c;
+        }
+
+        static long splitMix(long x) {
+            x += 0x9E3779B97F4A7C15L;
+            x = (x ^ (x >>> 30)) * 0xBF58476D1CE4E5B9L;
+            x = (x ^ (x >>> 27)) * 0x94D049BB133111EBL;
+            return x ^ (x >>> 31);
+        }
+
+        /** Hash of this position with the given player to move. */
+        long key(int toMove) {
+            return hashes[0] ^ SIDE_KEYS[toMove];
+        }
+
+        /**
+         * The symmetry that maps this position to its canonical form: the one with
+         * the smallest hash. All 8 symmetric variants of a position share it.
+         */
+        int canonicalSymmetry() {
+            int best = 0;
+            for (int t = 1; t < SYMMETRIES; t++)
+                if (hashes[t] < hashes[best])
+                    best = t;
+            return best;
+        }
+
+        /**
+         * Hash of the canonical form of this position with the given player to
+         * move, the same for all 8 symmetric variants. Used to key the
+         * transposition table and other position caches.
+         */
+        long canonicalKey(int toMove) {
+            return hashes[canonicalSymmetry()] ^ SIDE_KEYS[toMove];
+        }
+
+        /** Hash of this position seen through symmetry t, with the given player to move. */
+        long symmetricKey(int t, int toMove) {
+            return hashes[t] ^ SIDE_KEYS[toMove];
+        }
+
+        /** Applies symmetry t to a bitboard (see SYMMETRY). */
+        static long transform(long b, int t) {
+            if ((t & 4) != 0)
+                b = flipDiagonal(b);
+            if ((t & 2) != 0)
+                b = Long.reverseBytes(b); // rows reversed
+            if ((t & 1) != 0)
+                b = mirrorHorizontal(b);
+            return b;
+        }
+
+        /** Reverses the columns of every row. */
+        static long mirrorHorizontal(long b) {
+            b = ((b >>> 1) & 0x5555555555555555L) | ((b & 0x5555555555555555L) << 1);
+            b = ((b >>> 2) & 0x3333333333333333L) | ((b & 0x3333333333333333L) << 2);
+            return ((b >>> 4) & 0x0F0F0F0F0F0F0F0FL) | ((b & 0x0F0F0F0F0F0F0F0FL) << 4);
+        }
+
+        /** Swaps rows and columns (mirror in the square 0 - square 63 diagonal). */
+        static long flipDiagonal(long b) {
+            long t = 0x0F0F0F0F00000000L & (b ^ (b << 28));
+            b ^= t ^ (t >>> 28);
+            t = 0x3333000033330000L & (b ^ (b << 14));
+            b ^= t ^ (t >>> 14);
+            t = 0x5500550055005500L & (b ^ (b << 7));
+            return b ^ t ^ (t >>> 7);
+        }
+
+        static boolean onBoard(int c, int r) {
+            return c >= 0 && c < 8 && r >= 0 && r < 8;
+        }
+
+        int indexOf(char sym) {
+            for (int i = 0; i < symbols.length; i++)
+                if (symbols[i] == sym)
+                    return i;
+            return -1;
+        }
+
+        int count(int player) {
+            return Long.bitCount(pieces[player]);
+        }
+
+        /** True if sq is on the board and empty (an open end for a window). */
+        boolean isOpen(int sq) {
+            return sq >= 0 && (occupied & (1L << sq)) == 0;
+        }
+
+        void place(int player, int sq) {
+            long bit = 1L << sq;
+            pieces[player] |= bit;
+            occupied |= bit;
+            long[] z = ZOBRIST[player];
+            for (int t = 0; t < SYMMETRIES; t++)
+                hashes[t] ^= z[SYMMETRY[t][sq]];
+            eval.update(this, player, sq, 1);
+        }
+
+        void remove(int player, int sq) {
+            long bit = ~(1L << sq);
+            pieces[player] &= bit;
+            occupied &= bit;
+            long[] z = ZOBRIST[player];
+            for (int t = 0; t < SYMMETRIES; t++)
+                hashes[t] ^= z[SYMMETRY[t][sq]];
+            eval.update(this, player, sq, -1);
+        }
+
+        void move(int player, int from, int to) {
+            long flip = (1L << from) | (1L << to);
+            pieces[player] ^= flip;
+            occupied ^= flip;
+            long[] z = ZOBRIST[player];
+            for (int t = 0; t < SYMMETRIES; t++)
+                hashes[t] ^= z[SYMMETRY[t][from]] ^ z[SYMMETRY[t][to]];
+            eval.update(this, player, from, -1);
+            eval.update(this, player, to, 1);
+        }
+
+        /**
+         * Checks whether the player's piece on sq completes five in a row. A new line
+         * can only pass through the square just played, so only the windows through
+         * that square are tested.
+         */
+        boolean winsThrough(int player, int sq) {
+            long b = pieces[player];
+            for (int w : WINDOWS_THROUGH[sq]) {
+                long m = WINDOW_MASK[w];
+                if ((b & m) == m)
+                    return true;
+            }
+            return false;
+        }
+
+        /**
+         * Checks a player's word for n pieces in a row along any of the four
+         * directions. Each pass of the loop extends every run by one square with a
+         * single shift-and.
+         */
+        static boolean hasLine(long b, int n) {
+            for (int dir = 0; dir < 4; dir++) {
+                long run = b;
+                for (int i = 1; i < n && run != 0; i++)
+                    run &= shift(run, dir);
+                if (run != 0)
+                    return true;
+            }
+            return false;
+        }
+
+        /**
+         * Moves every bit back one step along a direction, so bit sq of the result is
+         * set when sq + step was set: 0 = east (col + 1), 1 = north (row + 1),
+         * 2 = north-east, 3 = north-west. Wrapped columns are masked off.
+         */
+        static long shift(long b, int dir) {
+            switch (dir) {
+                case 0:
+                    return (b >>> 1) & ~FILE_H;
+                case 1:
+                    return b >>> 8;
+                case 2:
+                    return (b >>> 9) & ~FILE_H;
+                default:
+                    return (b >>> 7) & ~FILE_A;
+            }
+        }
+    }
+
+    // =========================
+    // WindowEval
+    // =========================
+    /**
+     * Incrementally maintained evaluation state for a BitBoard. Tracks, for every
+     * five-cell window and its two flanking squares, which of those seven squares
+     * each player holds and which are filled at all, plus the window's current
+     * score for each player and the resulting per-player heuristic totals. A
+     * change on one square only rescores the windows that contain or flank it,
+     * and each rescore is a single PatternTable lookup, so reading a player's
+     * heuristic is O(1).
+     */
+    static class WindowEval {
+        private static final int CELLS = 0x3E; // pattern bits 1-5, the window itself
+
+        private final int players;
+        private final int[][] patterns; // [player][window] 7-bit pattern of the player's pieces
+        private final int[] filled; // [window] 7-bit pattern of pieces of any player and off-board flanks
+        private final int[][] scores; // [player][window] current pattern score
+        final int[] totals; // [player] window scores plus center control
+
+        WindowEval(int players) {
+            this.players = players;
+            this.patterns = new int[players][BitBoard.WINDOWS];
+            this.filled = BitBoard.OFF_BOARD_FLANKS.clone();
+            this.scores = new int[players][BitBoard.WINDOWS];
+            this.totals = new int[players];
+        }
+
+        WindowEval(WindowEval other) {
+            this.players = other.players;
+            this.patterns = new int[players][];
+            this.scores = new int[players][];
+            for (int p = 0; p < players; p++) {
+                this.patterns[p] = other.patterns[p].clone();
+                this.scores[p] = other.scores[p].clone();
+            }
+            this.filled = other.filled.clone();
+            this.totals = other.totals.clone();
+        }
+
+        /**
+         * Applies a piece appearing (delta = 1) or vanishing (delta = -1) on sq.
+         * Called by BitBoard after its words have been updated.
+         */
+        void update(BitBoard bb, int player, int sq, int delta) {
+            if ((BitBoard.CENTER & (1L << sq)) != 0)
+                totals[player] += PatternTable.centerBonus() * delta;
+
+            int[] windows = BitBoard.WINDOWS_AFFECTED[sq];
+            int[] bits = BitBoard.PATTERN_BIT[sq];
+            int[] table = PatternTable.SCORES;
+            int[] mine = patterns[player];
+            for (int i = 0; i < windows.length; i++) {
+                int w = windows[i];
+                mine[w] ^= bits[i];
+                int f = filled[w] ^= bits[i];
+                for (int p = 0; p < players; p++) {
+                    int s = table[patterns[p][w] | f << 7];
+                    totals[p] += s - scores[p][w];
+                    scores[p][w] = s;
+                }
+            }
+        }
+
+        /** Most pieces the player has in any one window. */
+        int maxCount(int player) {
+            int best = 0;
+            for (int pattern : patterns[player])
+                best = Math.max(best, Integer.bitCount(pattern & CELLS));
+            return best;
+        }
+
+        /**
+         * Empty squares of the windows that hold exactly count pieces, all of them
+         * the given player's. With count 4 these are the squares that complete five.
+         */
+        long emptiesOfWindows(BitBoard bb, int player, int count) {
+            long squares = 0;
+            int[] mine = patterns[player];
+            for (int w = 0; w < BitBoard.WINDOWS; w++) {
+                int cells = mine[w] & CELLS;
+                if (cells == (filled[w] & CELLS) && Integer.bitCount(cells) == count)
+                    squares |= BitBoard.WINDOW_MASK[w];
+            }
+            return squares & ~bb.occupied;
+        }
+    }
+
+    // =========================
+    // PatternTable
+    // =========================
+    /**
+     * Precomputed window scores. An extended window is the five cells plus the
+     * square before and after it; its state for one player is two 7-bit masks,
+     * the player's pieces and the filled squares (any piece, or off the board).
+     * SCORES is indexed by mine | filled << 7, so WindowEval scores a window
+     * with one array read instead of the counting and branching it used to do.
+     *
+     * The table is built once from ten named weights. Defaults are the values
+     * the AI has always used; a properties file (ai_weights.txt in the working
+     * directory, or the path in the system property connect5.weights) can
+     * override any of them without recompiling, e.g. "open_three = 40000".
+     */
+    static class PatternTable {
+        static final String WEIGHTS_FILE = "ai_weights.txt";
+
+        // Pattern classes, each with one weight
+        static final int FIVE = 0, OPEN_FOUR = 1, CLOSED_FOUR = 2, BLOCKED_FOUR = 3, OPEN_THREE = 4,
+                CLOSED_THREE = 5, BLOCKED_THREE = 6, OPEN_TWO = 7, TWO = 8, ONE = 9, CENTER = 10;
+        static final String[] NAMES = { "five", "open_four", "closed_four", "blocked_four", "open_three",
+                "closed_three", "blocked_three", "open_two", "two", "one", "center" };
+        static final int[] DEFAULT_WEIGHTS = { 1_000_000, 900_000, 50_000, 1000, 50_000, 1000, 100, 500, 50, 10, 4 };
+
+        private static final int[] WEIGHTS = loadWeights();
+        /** Score of every (mine, filled) pattern pair; pairs where mine is not inside filled stay 0. */
+        static final int[] SCORES = buildScores(WEIGHTS);
+
+        /** Bonus per piece on the CENTER squares. */
+        static int centerBonus() {
+            return WEIGHTS[CENTER];
+        }
+
+        /** Score of a window from its piece counts and flanks; the same value SCORES holds. */
+        static int score(int meCount, int oppCount, boolean openStart, boolean openEnd) {
+            int c = classify(meCount, oppCount, openStart, openEnd);
+            return c < 0 ? 0 : WEIGHTS[c];
+        }
+
+        /**
+         * The pattern class of a window, or -1 if it is worth nothing to the player:
+         * no pieces of theirs, or blocked by another player's piece.
+         * openStart/openEnd describe the squares immediately before and after the
+         * window: ".XXX." vs "OXXX." style patterns.
+         */
+        static int classify(int meCount, int oppCount, boolean openStart, boolean openEnd) {
+            if (meCount == 0 || oppCount > 0)
+                return -1;
+            switch (meCount) {
+                case 5:
+                    return FIVE;
+                case 4: // OPEN 4 is unstoppable, CLOSED 4 must be blocked
+                    return openStart && openEnd ? OPEN_FOUR : openStart || openEnd ? CLOSED_FOUR : BLOCKED_FOUR;
+                case 3:
+                    return openStart && openEnd ? OPEN_THREE : openStart || openEnd ? CLOSED_THREE : BLOCKED_THREE;
+                case 2:
+                    return openStart && openEnd ? OPEN_TWO : TWO;
+                default:
+                    return ONE;
+            }
+        }
+
+        static int[] buildScores(int[] weights) {
+            int[] table = new int[1 << 14];
+            for (int filled = 0; filled < 1 << 7; filled++)
+                for (int mine = filled;; mine = (mine - 1) & filled) { // every subset of filled
+                    int meCount = Integer.bitCount(mine & 0x3E);
+                    int oppCount = Integer.bitCount(filled & ~mine & 0x3E);
+                    int c = classify(meCount, oppCount, (filled & 1) == 0, (filled & 0x40) == 0);
+                    table[mine | filled << 7] = c < 0 ? 0 : weights[c];
+                    if (mine == 0)
+                        break;
+                }
+            return table;
+        }
+
+        /** Default weights, overridden by any valid entries of the weights file. */
+        private static int[] loadWeights() {
+            int[] weights = DEFAULT_WEIGHTS.clone();
+            java.nio.file.Path path = Paths.get(System.getProperty("connect5.weights", WEIGHTS_FILE));
+            if (!Files.isRegularFile(path))
+                return weights;
+            java.util.Properties props = new java.util.Properties();
+            try (BufferedReader in = Files.newBufferedReader(path)) {
+                props.load(in);
+            } catch (IOException e) {
+                System.err.println("Could not read " + path + ": " + e.getMessage());
+                return weights;
+            }
+            for (int i = 0; i < NAMES.length; i++) {
+                String value = props.getProperty(NAMES[i]);
+                if (value == null)
+                    continue;
+                try {
+                    weights[i] = Integer.parseInt(value.trim());
+                } catch (NumberFormatException e) {
+                    System.err.println("Ignoring weight " + NAMES[i] + "=" + value + " in " + path);
+                }
+            }
+            return weights;
+        }
+    }
+
+    // =========================
+    // FullEvaluator
+    // =========================
+    /**
+     * Evaluates a position from scratch: every player's sum of window scores plus
+     * center control, the same totals WindowEval keeps incrementally. The search
+     * reads the incremental totals; full rescans check them (with -ea) and are
+     * what the benchmark compares.
+     *
+     * SCALAR counts pieces per window with popcounts. The vector backend,
+     * vector/VectorEval.java, scores all windows lane-parallel with
+     * jdk.incubator.vector. It is compiled separately and loaded by name so this
+     * file builds and runs without the incubator module; preferred() falls back
+     * to SCALAR when the class or the module is missing, or when the system
+     * property connect5.vector is false.
+     */
+    abstract static class FullEvaluator {
+        static final String VECTOR_CLASS = "FinalProject.VectorEval";
+
+        /** Writes each player's total for the given piece words into totals. */
+        abstract void evaluate(long[] pieces, long occupied, int[] totals);
+
+        abstract String name();
+
+        static final FullEvaluator SCALAR = new FullEvaluator() {
+            @Override
+            void evaluate(long[] pieces, long occupied, int[] totals) {
+                for (int p = 0; p < pieces.length; p++)
+                    totals[p] = heuristic(pieces[p], occupied);
+            }
+
+            @Override
+            String name() {
+                return "scalar";
+            }
+        };
+
+        /**
+         * Advanced heuristic function that counts potential winning lines.
+         * Evaluates all 96 five-cell windows using popcounts on the window masks.
+         *
+         * @param mine     The evaluated player's pieces
+         * @param occupied Pieces of all players
+         * @return The heuristic score for this player
+         */
+        static int heuristic(long mine, long occupied) {
+            int score = 0;
+            long others = occupied & ~mine;
+
+            for (int w = 0; w < BitBoard.WINDOWS; w++) {
+                long mask = BitBoard.WINDOW_MASK[w];
+                int meCount = Long.bitCount(mine & mask);
+                if (meCount == 0)
+                    continue;
+                int oppCount = Long.bitCount(others & mask);
+                score += PatternTable.score(meCount, oppCount, isOpen(occupied, BitBoard.WINDOW_BEFORE[w]),
+                        isOpen(occupied, BitBoard.WINDOW_AFTER[w]));
+            }
+
+            score += Long.bitCount(mine & BitBoard.CENTER) * PatternTable.centerBonus();
+            return score;
+        }
+
+        private static boolean isOpen(long occupied, int sq) {
+            return sq >= 0 && (occupied & (1L << sq)) == 0;
+        }
+
+        /** The Vector API backend, or null if it cannot be loaded in this JVM. */
+        static FullEvaluator vector() {
+            return Backends.VECTOR;
+        }
+
+        /** The vector backend when available and not disabled, else SCALAR. */
+        static FullEvaluator preferred() {
+            return Backends.PREFERRED;
+        }
+
+        // Loaded on first use, so SCALAR-only callers never touch the Vector API
+        private static final class Backends {
+            static final FullEvaluator VECTOR = load();
+            static final FullEvaluator PREFERRED = VECTOR != null
+                    && Boolean.parseBoolean(System.getProperty("connect5.vector", "true")) ? VECTOR : SCALAR;
+
+            private static FullEvaluator load() {
+                try {
+                    return (FullEvaluator) Class.forName(VECTOR_CLASS).getDeclaredConstructor().newInstance();
+                } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+                    return null; // not compiled in, or started without --add-modules jdk.incubator.vector
+                }
+            }
+        }
+    }
+
+    // =========================
+    // NeuralEval
+    // =========================
+    /**
+     * Optional quantized neural evaluator in the NNUE style. From each player's
+     * point of view the input is 128 features, one per square for "my piece" and
+     * one per square for "another player's piece". The first layer's int16
+     * weights are summed into an int accumulator per player (an Accumulator
+     * attached to the board), kept up to date by AIPlayer.applyMove and undoMove,
+     * so a leaf only runs the small upper layers:
+     *
+     * acc (HIDDEN1 x int32) -> clamp 0..127 -> int8 weights -> HIDDEN2 -> shift,
+     * clamp 0..127 -> int8 weights -> one output, scaled into heuristic units.
+     *
+     * The network is opt-in: AIs use it only when the system property
+     * connect5.nnue names a weights file (or setNeuralEval is called), since a
+     * leaf costs far more than reading the incremental window totals. The file
+     * is big-endian: "C5NN", version, HIDDEN1, HIDDEN2, output scale, then
+     * W1 int16[128][HIDDEN1] (own squares first), B1 int16[HIDDEN1],
+     * W2 int8[HIDDEN2][HIDDEN1], B2 int32[HIDDEN2], W3 int8[HIDDEN2], B3 int32.
+     *
+     * The transposition table, opening book and learning memory key on
+     * canonical positions, so evaluations must not depend on the board's
+     * orientation: on load, each W1 row is averaged over the square's orbit
+     * under the 8 board symmetries, which makes the output symmetry-invariant.
+     */
+    static class NeuralEval {
+        private static final int MAGIC = 0x43354E4E; // "C5NN"
+        private static final int VERSION = 1;
+        private static final int HEADER_BYTES = 20;
+        static final int FEATURES = 128; // square + 64 for another player's piece
+        private static final int L2_SHIFT = 6; // layer-2 sums back to the 0..127 range
+
+        private static NeuralEval shared;
+        private static boolean sharedLoaded;
+
+        final int hidden1, hidden2, outputScale;
+        private final short[] w1; // [feature][hidden1]
+        private final short[] b1;
+        private final int[] w2t; // [hidden1][hidden2], int8 values transposed and widened for the update loop
+        private final int[] b2;
+        private final byte[] w3;
+        private final int b3;
+
+        private NeuralEval(int hidden1, int hidden2, int outputScale, short[] w1, short[] b1, byte[] w2, int[] b2,
+                byte[] w3, int b3) {
+            this.hidden1 = hidden1;
+            this.hidden2 = hidden2;
+            this.outputScale = outputScale;
+            this.w1 = symmetrize(w1, hidden1);
+            this.b1 = b1;
+            this.w2t = new int[w2.length];
+            for (int j = 0; j < hidden2; j++)
+                for (int i = 0; i < hidden1; i++)
+                    this.w2t[i * hidden2 + j] = w2[j * hidden1 + i];
+            this.b2 = b2;
+            this.w3 = w3;
+            this.b3 = b3;
+        }
+
+        /**
+         * Ties the first-layer weights of squares that the board symmetries map
+         * onto each other: every row becomes the mean over the 8 images of its
+         * square, for own and for other players' pieces alike.
+         */
+        private static short[] symmetrize(short[] w1, int hidden1) {
+            short[] tied = new short[w1.length];
+            for (int f = 0; f < FEATURES; f++) {
+                int half = f & ~63, sq = f & 63;
+                for (int i = 0; i < hidden1; i++) {
+                    int sum = 0;
+                    for (int t = 0; t < BitBoard.SYMMETRIES; t++)
+                        sum += w1[(half + BitBoard.SYMMETRY[t][sq]) * hidden1 + i];
+                    tied[f * hidden1 + i] = (short) Math.round(sum / (float) BitBoard.SYMMETRIES);
+                }
+            }
+            return tied;
+        }
+
+        /** The network named by the system property connect5.nnue, read on first use; null if unset or unreadable. */
+        static synchronized NeuralEval shared() {
+            if (!sharedLoaded) {
+                sharedLoaded = true;
+                String file = System.getProperty("connect5.nnue");
+                shared = file == null ? null : open(Paths.get(file));
+            }
+            return shared;
+        }
+
+        /**
+         * Reads a weights file.
+         * 
+         * @return The network, or null (with a message) if the file is missing or malformed
+         */
+        static NeuralEval open(java.nio.file.Path path) {
+            if (!Files.exists(path))
+                return invalid(path);
+            try {
+                java.nio.ByteBuffer buf = java.nio.ByteBuffer.wrap(Files.readAllBytes(path));
+                if (buf.remaining() < HEADER_BYTES || buf.getInt() != MAGIC || buf.getInt() != VERSION)
+                    return invalid(path);
+                int hidden1 = buf.getInt(), hidden2 = buf.getInt(), outputScale = buf.getInt();
+                if (hidden1 <= 0 || hidden1 > 1024 || hidden2 <= 0 || hidden2 > 256
+                        || buf.remaining() != bodyBytes(hidden1, hidden2))
+                    return invalid(path);
+                short[] w1 = new short[FEATURES * hidden1];
+                short[] b1 = new short[hidden1];
+                byte[] w2 = new byte[hidden2 * hidden1];
+                int[] b2 = new int[hidden2];
+                byte[] w3 = new byte[hidden2];
+                buf.asShortBuffer().get(w1).get(b1);
+                buf.position(buf.position() + 2 * (w1.length + b1.length));
+                buf.get(w2);
+                buf.asIntBuffer().get(b2);
+                buf.position(buf.position() + 4 * b2.length);
+                buf.get(w3);
+                return new NeuralEval(hidden1, hidden2, outputScale, w1, b1, w2, b2, w3, buf.getInt());
+            } catch (IOException e) {
+                return invalid(path);
+            }
+        }
+
+        private static NeuralEval invalid(java.nio.file.Path path) {
+            System.err.println("Ignoring " + path + ": not a readable network file");
+            return null;
+        }
+
+        private static long bodyBytes(int hidden1, int hidden2) {
+            return 2L * (FEATURES + 1) * hidden1 + (long) hidden2 * hidden1 + 4L * hidden2 + hidden2 + 4;
+        }
+
+        /** Writes the network in the format open reads. */
+        void save(java.nio.file.Path path) throws IOException {
+            java.nio.ByteBuffer buf = java.nio.ByteBuffer.allocate((int) (HEADER_BYTES + bodyBytes(hidden1, hidden2)));
+            buf.putInt(MAGIC).putInt(VERSION).putInt(hidden1).putInt(hidden2).putInt(outputScale);
+            for (short w : w1)
+                buf.putShort(w);
+            for (short b : b1)
+                buf.putShort(b);
+            for (int j = 0; j < hidden2; j++)
+                for (int i = 0; i < hidden1; i++)
+                    buf.put((byte) w2t[i * hidden2 + j]);
+            for (int b : b2)
+                buf.putInt(b);
+            buf.put(w3).putInt(b3);
+            Files.write(path, buf.array());
+        }
+
+        /** A network with small random weights, for benchmarks and as a starting point for training. */
+        static NeuralEval random(long seed, int hidden1, int hidden2) {
+            Random rng = new Random(seed);
+            short[] w1 = new short[FEATURES * hidden1];
+            short[] b1 = new short[hidden1];
+            byte[] w2 = new byte[hidden2 * hidden1];
+            int[] b2 = new int[hidden2];
+            byte[] w3 = new byte[hidden2];
+            for (int i = 0; i < w1.length; i++)
+                w1[i] = (short) (rng.nextInt(33) - 16);
+            for (int i = 0; i < b1.length; i++)
+                b1[i] = (short) rng.nextInt(32);
+            for (int i = 0; i < w2.length; i++)
+                w2[i] = (byte) (rng.nextInt(33) - 16);
+            for (int i = 0; i < w3.length; i++)
+                w3[i] = (byte) (rng.nextInt(33) - 16);
+            return new NeuralEval(hidden1, hidden2, 16, w1, b1, w2, b2, w3, 0);
+        }
+
+        /** Starts an accumulator for the board's current pieces. */
+        Accumulator accumulate(BitBoard bb) {
+            Accumulator acc = new Accumulator(this, bb.pieces.length);
+            acc.refresh(bb);
+            return acc;
+        }
+
+        /**
+         * Upper layers for one player's accumulator slice. Layer 2 adds one weight
+         * row per active first-layer unit, which the JIT turns into vector adds,
+         * and skips the units the clamp zeroed.
+         * 
+         * @param sums Scratch of hidden2 entries for the layer-2 sums
+         */
+        int forward(int[] acc, int offset, int[] sums) {
+            System.arraycopy(b2, 0, sums, 0, hidden2);
+            for (int i = 0; i < hidden1; i++) {
+                int a = Math.min(127, acc[offset + i]);
+                if (a <= 0)
+                    continue;
+                int row = i * hidden2;
+                for (int j = 0; j < hidden2; j++)
+                    sums[j] += a * w2t[row + j];
+            }
+            int out = b3;
+            for (int j = 0; j < hidden2; j++)
+                out += Math.min(127, Math.max(0, sums[j] >> L2_SHIFT)) * w3[j];
+            return out * outputScale;
+        }
+
+        /**
+         * First-layer sums of one position for every player, updated in place as
+         * pieces come and go. Each BitBoard (and so each search thread) has its own.
+         */
+        static class Accumulator {
+            private final NeuralEval net;
+            private final int players;
+            private final int[] acc; // [player][hidden1], int so sums of int16 weights cannot wrap
+            private final int[] outputs; // [player] filled by evaluate
+            private final int[] sums; // layer-2 scratch for evaluate
+
+            Accumulator(NeuralEval net, int players) {
+                this.net = net;
+                this.players = players;
+                this.acc = new int[players * net.hidden1];
+                this.outputs = new int[players];
+                this.sums = new int[net.hidden2];
+            }
+
+            Accumulator(Accumulator other) {
+                this.net = other.net;
+                this.players = other.players;
+                this.acc = other.acc.clone();
+                this.outputs = new int[players];
+                this.sums = new int[net.hidden2];
+            }
+
+            /** Recomputes every sum from the board. */
+            void refresh(BitBoard bb) {
+                int h = net.hidden1;
+                for (int p = 0; p < players; p++)
+                    for (int i = 0; i < h; i++)
+                        acc[p * h + i] = net.b1[i];
+                for (int p = 0; p < players; p++)
+                    for (long b = bb.pieces[p]; b != 0; b &= b - 1)
+                        update(p, Long.numberOfTrailingZeros(b), 1);
+            }
+
+            /** Plays (delta = 1) or takes back (delta = -1) a move of player. */
+            void apply(int player, int move, int delta) {
+                if (!AIPlayer.Move.isPlacement(move))
+                    update(player, AIPlayer.Move.from(move), -delta);
+                update(player, AIPlayer.Move.to(move), delta);
+            }
+
+            /** A piece of player appearing (delta = 1) or vanishing (delta = -1) on sq. */
+            void update(int player, int sq, int delta) {
+                int h = net.hidden1;
+                short[] w = net.w1;
+                for (int p = 0; p < players; p++) {
+                    int row = (p == player ? sq : sq + 64) * h;
+                    int base = p * h;
+                    for (int i = 0; i < h; i++)
+                        acc[base + i] += delta * w[row + i];
+                }
+            }
+
+            /** Every player's network output, in the same units as WindowEval.totals. */
+            int[] evaluate() {
+                for (int p = 0; p < players; p++)
+                    outputs[p] = net.forward(acc, p * net.hidden1, sums);
+                return outputs;
+            }
+
+            /** Debug check (run only with -ea) that the incremental sums equal a refresh. */
+            boolean matchesRefresh(BitBoard bb) {
+                Accumulator fresh = net.accumulate(bb);
+                return java.util.Arrays.equals(acc, fresh.acc);
+            }
+        }
+    }
+
+    // =========================
+    // ThreatMap
+    // =========================
+    /**
+     * Where a player can complete five, read straight from the window masks: a
+     * window holding four of the player's pieces and one empty square is a
+     * threat on that square. In the placement phase any such square wins; in the
+     * movement phase a step wins if it reaches the square from a neighbouring
+     * piece that is not itself part of the window. Works on bare bitboard words,
+     * so a position after a hypothetical move costs two bit operations, not a
+     * make and unmake.
+     */
+    static final class ThreatMap {
+        private ThreatMap() {
+        }
+
+        /** Empty squares that complete a window of the player's pieces. */
+        static long fiveSquares(long own, long occupied) {
+            long squares = 0;
+            for (int w = 0; w < BitBoard.WINDOWS; w++) {
+                long gap = BitBoard.WINDOW_MASK[w] & ~own;
+                if (gap != 0 && (gap & (gap - 1)) == 0 && (gap & occupied) == 0)
+                    squares |= gap;
+            }
+            return squares;
+        }
+
+        /** Pieces that complete five by stepping onto the threat square sq. */
+        static long winningFroms(long own, int sq) {
+            long target = 1L << sq, froms = 0;
+            for (int w : BitBoard.WINDOWS_THROUGH[sq]) {
+                long m = BitBoard.WINDOW_MASK[w];
+                if ((m & ~own) == target)
+                    froms |= BitBoard.NEIGHBORS[sq] & own & ~m;
+            }
+            return froms;
+        }
+
+        /**
+         * Number of moves that complete five for the player.
+         * 
+         * @param own       The player's pieces
+         * @param occupied  All pieces
+         * @param canPlace  In the placement phase: whether the player has pieces left
+         * @param placement true during the placement phase
+         */
+        static int countWins(long own, long occupied, boolean canPlace, boolean placement) {
+            long fives = fiveSquares(own, occupied);
+            if (placement)
+                return canPlace ? Long.bitCount(fives) : 0;
+            int n = 0;
+            for (; fives != 0; fives &= fives - 1)
+                n += Long.bitCount(winningFroms(own, Long.numberOfTrailingZeros(fives)));
+            return n;
+        }
+
+        /**
+         * A move that completes five for the player, or 0 if there is none.
+         * 
+         * @see #countWins
+         */
+        static int firstWin(long own, long occupied, boolean canPlace, boolean placement) {
+            long fives = fiveSquares(own, occupied);
+            if (placement)
+                return (canPlace && fives != 0) ? AIPlayer.Move.placementCode(Long.numberOfTrailingZeros(fives)) : 0;
+            for (; fives != 0; fives &= fives - 1) {
+                int to = Long.numberOfTrailingZeros(fives);
+                long froms = winningFroms(own, to);
+                if (froms != 0)
+                    return AIPlayer.Move.stepCode(Long.numberOfTrailingZeros(froms), to);
+            }
+            return 0;
+        }
+    }
+
+    // =========================
+    // ThreatSolver
+    // =========================
+    /**
+     * Threat-space search for forced wins in the placement phase of a two-player
+     * game. Only moves that make a four (one placement from five) or an open three
+     * (one placement from two fours at once) are tried for the attacker, and only
+     * the replies that can stop them for the defender: the completion square of a
+     * four, or a square inside the attacker's three-windows or one that makes a
+     * four of its own against a three. Any other reply leaves the threat standing,
+     * so a line found here is a proven win. The branching factor is tiny and each
+     * player has at most 8 pieces, so a search takes milliseconds.
+     *
+     * With three or more players a four does not force the next player to block it
+     * (a later player may), so there is no forced sequence to search and the solver
+     * declines.
+     */
+    static class ThreatSolver {
+        private static final int NODE_LIMIT = 200_000;
+        private static final int PIECES = 8; // PLACEMENT_LIMIT
+
+        private final BitBoard bb;
+        private final int attacker, defender;
+        private final boolean threes;
+        private final int[] line = new int[2 * PIECES + 1];
+        private int lineLength;
+        private long nodes;
+
+        private ThreatSolver(BitBoard bb, int attacker, boolean threes) {
+            this.bb = bb;
+            this.attacker = attacker;
+            this.defender = 1 - attacker;
+            this.threes = threes;
+        }
+
+        /**
+         * Searches for a forced win for the player to move.
+         * 
+         * @param bb       The position (restored before returning)
+         * @param attacker Index of the player to move
+         * @param threes   true to also try open threes (threat-space search), false
+         *                 for fours only (VCF)
+         * @return The winning line as encoded placements, attacker and defender
+         *         alternating with the attacker first, or null if none was proven
+         */
+        static int[] findWin(BitBoard bb, int attacker, boolean threes) {
+            if (bb.pieces.length != 2)
+                return null;
+            ThreatSolver solver = new ThreatSolver(bb, attacker, threes);
+            if (!solver.attack(0))
+                return null;
+            return java.util.Arrays.copyOf(solver.line, solver.lineLength);
+        }
+
+        /** Attacker to move: is there a forcing move that wins against every reply? */
+        private boolean attack(int ply) {
+            if (++nodes > NODE_LIMIT || bb.count(attacker) >= PIECES)
+                return false;
+
+            long fives = bb.eval.emptiesOfWindows(bb, attacker, 4);
+            if (fives != 0) {
+                line[ply] = AIPlayer.Move.placementCode(Long.numberOfTrailingZeros(fives));
+                lineLength = ply + 1;
+                return true;
+            }
+
+            long candidates;
+            long defenderFives = bb.eval.emptiesOfWindows(bb, defender, 4);
+            if (defenderFives != 0) {
+                // The defender threatens to win, so only the block can continue the attack
+                if (Long.bitCount(defenderFives) > 1)
+                    return false;
+                candidates = defenderFives;
+            } else {
+                // Fours first, then threes
+                long fours = bb.eval.emptiesOfWindows(bb, attacker, 3);
+                if (!tryAll(ply, fours))
+                    return threes && tryAll(ply, bb.eval.emptiesOfWindows(bb, attacker, 2) & ~fours);
+                return true;
+            }
+            return tryAll(ply, candidates);
+        }
+
+        private boolean tryAll(int ply, long candidates) {
+            for (long c = candidates; c != 0; c &= c - 1) {
+                int sq = Long.numberOfTrailingZeros(c);
+                bb.place(attacker, sq);
+                try {
+                    long fives = bb.eval.emptiesOfWindows(bb, attacker, 4);
+                    boolean forcing = fives != 0
+                            || (threes && bb.count(attacker) <= PIECES - 2 && makesOpenThree());
+                    if (forcing && defend(ply + 1, fives)) {
+                        line[ply] = AIPlayer.Move.placementCode(sq);
+                        return true;
+                    }
+                } finally {
+                    bb.remove(attacker, sq);
+                }
+            }
+            return false;
+        }
+
+        /** True if one more attacker piece would make two fours at once. */
+        private boolean makesOpenThree() {
+            for (long c = bb.eval.emptiesOfWindows(bb, attacker, 3); c != 0; c &= c - 1) {
+                int sq = Long.numberOfTrailingZeros(c);
+                bb.place(attacker, sq);
+                int fours = Long.bitCount(bb.eval.emptiesOfWindows(bb, attacker, 4));
+                bb.remove(attacker, sq);
+                if (fours >= 2)
+                    return true;
+            }
+            return false;
+        }
+
+        /** Defender to move after a threat: does the attack succeed against every reply? */
+        private boolean defend(int ply, long attackerFives) {
+            if (bb.count(defender) >= PIECES || bb.eval.emptiesOfWindows(bb, defender, 4) != 0)
+                return false; // cannot reply by placing, or wins first
+
+            // A four must be blocked on its completion square; an open three can also be
+            // met inside its windows or with a four of the defender's own
+            long replies = (attackerFives != 0) ? attackerFives
+                    : bb.eval.emptiesOfWindows(bb, attacker, 3) | bb.eval.emptiesOfWindows(bb, defender, 3);
+            for (long r = replies; r != 0; r &= r - 1) {
+                int sq = Long.numberOfTrailingZeros(r);
+                bb.place(defender, sq);
+                boolean won;
+                try {
+                    won = attack(ply + 1);
+                } finally {
+                    bb.remove(defender, sq);
+                }
+                if (!won)
+                    return false;
+                line[ply] = AIPlayer.Move.placementCode(sq);
+            }
+            return true;
+        }
+    }
+
+    // =========================
+    // TranspositionTable
+    // =========================
+    /**
+     * Fixed-size transposition table for the SMART search, stored in two primitive
+     * arrays. Each slot keeps the full 64-bit key and one packed word holding
+     * score, best move, bound type, depth and search generation.
+     * Replacement is depth-preferred: a slot written during the current search
+     * is only overwritten by an entry searched at least as deep.
+     */
+    static class TranspositionTable {
+        static final int EXACT = 1;
+        static final int LOWER = 2; // score is a lower bound (fail high)
+        static final int UPPER = 3; // score is an upper bound (fail low)
+
+        // Shared by all search threads without locking: a slot stores key ^ data,
+        // so a slot torn by a concurrent write fails the key check on probe
+        private final long[] keys;
+        private final long[] data;
+        private final int mask;
+        private int generation;
+
+        /**
+         * @param sizePow2 Number of slots, must be a power of two
+         */
+        TranspositionTable(int sizePow2) {
+            keys = new long[sizePow2];
+            data = new long[sizePow2];
+            mask = sizePow2 - 1;
+        }
+
+        /** Marks the start of a new search so older entries become replaceable. */
+        void newSearch() {
+            generation = (generation + 1) & 0xFF;
+        }
+
+        /**
+         * Looks up a position.
+         * 
+         * @param key Position hash including the side to move
+         * @return The packed entry, or 0 if the position is not stored
+         */
+        long probe(long key) {
+            int i = (int) key & mask;
+            long d = data[i];
+            return (keys[i] ^ d) == key ? d : 0L;
+        }
+
+        void store(long key, int depth, int flag, int score, int move) {
+            int i = (int) key & mask;
+            long old = data[i];
+            if (old != 0 && depthOf(old) > depth) {
+                // A deeper result for the same position (say, from pondering) stays;
+                // another position's only while it is from the current search
+                if ((keys[i] ^ old) == key ? flagOf(old) == EXACT || flag != EXACT : generationOf(old) == generation)
+                    return;
+            }
+            long entry = (score & 0xFFFFFFFFL)
+                    | ((long) (move & 0x1FFF) << 32)
+                    | ((long) flag << 45)
+                    | ((long) (depth & 0xFF) << 47)
+                    | ((long) generation << 55);
+            keys[i] = key ^ entry;
+            data[i] = entry;
+        }
+
+        static int scoreOf(long entry) {
+            return (int) entry;
+        }
+
+        static int moveOf(long entry) {
+            return (int) (entry >>> 32) & 0x1FFF;
+        }
+
+        static int flagOf(long entry) {
+            return (int) (entry >>> 45) & 0x3;
+        }
+
+        static int depthOf(long entry) {
+            return (int) (entry >>> 47) & 0xFF;
+        }
+
+        private static int generationOf(long entry) {
+            return (int) (entry >>> 55) & 0xFF;
+        }
+    }
+
+    // =========================
+    // LearningMemory
+    // =========================
+    /**
+     * Moves that lost a game before, kept as hashes of (position, move) pairs so
+     * the AI avoids them when the same position comes up again, reached by any
+     * move order and in any of its 8 symmetric forms.
+     *
+     * The memory is bounded. Every entry counts how often it has matched since
+     * and remembers when it was last used, on a clock that ticks once per lost
+     * game. When the entry limit is exceeded, entries that never matched again
+     * are evicted first, least recently used first, then the least recently
+     * used of the rest; entries of the loss just recorded count as matched, so
+     * a full memory still learns. Hit counts halve every AGING_PERIOD lost games, so old
+     * popularity fades.
+     *
+     * Stored in ai_memory.bin: a header ("C5LM", version, clock) followed by
+     * 16-byte records (pair hash, hits, last use). New entries are appended by a
+     * background thread; the same thread compacts the file by writing the live
+     * entries to a temporary file and moving it over the old one atomically.
+     * Limits default to 65536 entries and 1 MB on disk and can be set with the
+     * system properties connect5.memory.maxEntries and connect5.memory.maxFileBytes.
+     */
+    static class LearningMemory {
+        static final String MEMORY_FILE = "ai_memory.bin";
+        private static final int MAGIC = 0x43354C4D; // "C5LM"
+        private static final int VERSION = 2;
+        private static final int HEADER_BYTES = 12;
+        private static final int RECORD_BYTES = 16;
+        static final int DEFAULT_MAX_ENTRIES = 1 << 16;
+        static final long DEFAULT_MAX_FILE_BYTES = 1 << 20;
+        private static final int COMPACT_AFTER_HITS = 256; // hit updates that justify a rewrite
+        private static final int AGING_PERIOD = 32; // lost games between halvings of the hit counts
+
+        private static LearningMemory shared;
+
+        // Single daemon thread, so writes reach the file in order and never block exit
+        private static final java.util.concurrent.ExecutorService WRITER = java.util.concurrent.Executors
+                .newSingleThreadExecutor(r -> {
+                    Thread t = new Thread(r, "AI memory writer");
+                    t.setDaemon(true);
+                    return t;
+                });
+
+        private final java.nio.file.Path path;
+        private int maxEntries = DEFAULT_MAX_ENTRIES;
+        private long maxFileBytes = DEFAULT_MAX_FILE_BYTES;
+
+        // Open addressing; keys[i] == 0 marks an empty slot
+        private long[] keys = new long[1024];
+        private int[] hits = new int[1024];
+        private int[] lastUse = new int[1024];
+        private int size;
+        private int clock; // lost games recorded so far
+
+        private int fileRecords; // records in the file, live or evicted
+        private int dirtyHits; // hit updates not written yet
+        private boolean fileValid; // false: the file is missing, old or damaged and is rewritten on first write
+
+        private LearningMemory(java.nio.file.Path path) {
+            this.path = path;
+        }
+
+        /** The memory in the working directory, read on first use. */
+        static synchronized LearningMemory shared() {
+            if (shared == null) {
+                LearningMemory memory = new LearningMemory(Paths.get(MEMORY_FILE));
+                memory.setLimits(Integer.getInteger("connect5.memory.maxEntries", DEFAULT_MAX_ENTRIES),
+                        Long.getLong("connect5.memory.maxFileBytes", DEFAULT_MAX_FILE_BYTES));
+                memory.load();
+                shared = memory;
+            }
+            return shared;
+        }
+
+        /** Reads a memory file with the default limits; a missing or damaged file gives an empty memory. */
+        static LearningMemory open(java.nio.file.Path path) {
+            LearningMemory memory = new LearningMemory(path);
+            memory.load();
+            return memory;
+        }
+
+        /**
+         * Sets the entry limit and the file size limit. The tighter of the two
+         * bounds the entries kept; excess entries are evicted at once.
+         */
+        synchronized void setLimits(int maxEntries, long maxFileBytes) {
+            this.maxFileBytes = Math.max(HEADER_BYTES + RECORD_BYTES, maxFileBytes);
+            this.maxEntries = (int) Math.max(1,
+                    Math.min(maxEntries, (this.maxFileBytes - HEADER_BYTES) / RECORD_BYTES));
+            if (size > this.maxEntries)
+                evict();
+        }
+
+        private synchronized void load() {
+            try {
+                if (!Files.exists(path))
+                    return;
+                java.nio.ByteBuffer buf = java.nio.ByteBuffer.wrap(Files.readAllBytes(path));
+                // Any other file (including older formats) is replaced on the first write
+                if (buf.remaining() < HEADER_BYTES || buf.getInt() != MAGIC || buf.getInt() != VERSION)
+                    return;
+                clock = buf.getInt();
+                while (buf.remaining() >= RECORD_BYTES) {
+                    put(buf.getLong(), buf.getInt(), buf.getInt());
+                    fileRecords++;
+                }
+                fileValid = true;
+            } catch (IOException e) {
+                fileValid = false;
+            }
+        }
+
+        /** Hash of a move made in a position, both in the position's canonical orientation. */
+        static long pairKey(BitBoard bb, int toMove, int move) {
+            long key = bb.canonicalKey(toMove)
+                    ^ BitBoard.splitMix(AIPlayer.Move.transform(move, bb.canonicalSymmetry()));
+            return key != 0 ? key : 1;
+        }
+
+        /**
+         * True if the player lost a game after making this move in this position.
+         * A match counts as a hit and renews the entry.
+         */
+        synchronized boolean contains(long pairKey) {
+            int i = find(pairKey);
+            if (i < 0)
+                return false;
+            hits[i]++;
+            lastUse[i] = clock;
+            dirtyHits++;
+            return true;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        /** Hits recorded for a pair, or -1 if it is not in the memory. */
+        synchronized int hits(long pairKey) {
+            int i = find(pairKey);
+            return i < 0 ? -1 : hits[i];
+        }
+
+        private int find(long key) {
+            int mask = keys.length - 1;
+            for (int i = (int) key & mask; keys[i] != 0; i = (i + 1) & mask)
+                if (keys[i] == key)
+                    return i;
+            return -1;
+        }
+
+        /**
+         * Adds an entry, or renews it if present (keeping the later use and the
+         * larger hit count). Evicts when the limit is exceeded.
+         * 
+         * @return true if the key was new
+         */
+        private boolean put(long key, int hitCount, int use) {
+            int i = find(key);
+            if (i >= 0) {
+                hits[i] = Math.max(hits[i], hitCount);
+                lastUse[i] = Math.max(lastUse[i], use);
+                return false;
+            }
+            if (2 * (size + 1) > keys.length)
+                rehash(keys.length * 2);
+            insert(key, hitCount, use);
+            if (size > maxEntries)
+                evict();
+            return true;
+        }
+
+        private void insert(long key, int hitCount, int use) {
+            int mask = keys.length - 1;
+            int i = (int) key & mask;
+            while (keys[i] != 0)
+                i = (i + 1) & mask;
+            keys[i] = key;
+            hits[i] = hitCount;
+            lastUse[i] = use;
+            size++;
+        }
+
+        private void rehash(int capacity) {
+            long[] oldKeys = keys;
+            int[] oldHits = hits, oldUse = lastUse;
+            keys = new long[capacity];
+            hits = new int[capacity];
+            lastUse = new int[capacity];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++)
+                if (oldKeys[i] != 0)
+                    insert(oldKeys[i], oldHits[i], oldUse[i]);
+        }
+
+        /**
+         * Brings the memory down to 7/8 of its limit, so evictions come in
+         * batches: entries that never matched go first, in order of last use.
+         */
+        private void evict() {
+            int target = maxEntries - maxEntries / 8;
+            int excess = size - target;
+            if (excess <= 0)
+                return;
+            // Matched (and just learned) entries rank above unmatched ones, then by last use
+            long[] ranks = new long[size];
+            int n = 0;
+            for (int i = 0; i < keys.length; i++)
+                if (keys[i] != 0)
+                    ranks[n++] = rank(hits[i], lastUse[i]);
+            java.util.Arrays.sort(ranks);
+            long cut = ranks[excess - 1];
+            int belowCut = 0;
+            for (int k = 0; k < excess; k++)
+                if (ranks[k] < cut)
+                    belowCut++;
+            int atCut = excess - belowCut; // entries ranked exactly at the cut still to go
+
+            long[] oldKeys = keys;
+            int[] oldHits = hits, oldUse = lastUse;
+            keys = new long[oldKeys.length];
+            hits = new int[oldKeys.length];
+            lastUse = new int[oldKeys.length];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] == 0)
+                    continue;
+                long r = rank(oldHits[i], oldUse[i]);
+                if (r < cut || (r == cut && atCut-- > 0))
+                    continue;
+                insert(oldKeys[i], oldHits[i], oldUse[i]);
+            }
+        }
+
+        private long rank(int hitCount, int use) {
+            return (hitCount > 0 || use == clock ? 1L << 32 : 0) | (use & 0xFFFFFFFFL);
+        }
+
+        /**
+         * Learns from a finished game: every move the loser made in it, or as many
+         * of the final ones as the memory keeps after an eviction. The moves
+         * are recovered by taking back the recorded history from the final board,
+         * so games resumed from a save are handled too. New pairs are written to
+         * the file in the background.
+         * 
+         * @param game  The finished game
+         * @param loser Index of the losing player
+         */
+        void recordLoss(Game game, int loser) {
+            BitBoard bb = BitBoard.from(game);
+            long[] learned = new long[game.moveHistory.size()];
+            int n = 0;
+            long lastLost = 0; // pair of the loser's final move, which eviction must never drop
+            synchronized (this) {
+                int room = maxEntries - maxEntries / 8; // what evict() leaves
+                if (++clock % AGING_PERIOD == 0) {
+                    // Aging: past hits count half from now on
+                    for (int i = 0; i < keys.length; i++)
+                        hits[i] >>>= 1;
+                    dirtyHits += size;
+                }
+                for (int i = game.moveHistory.size() - 1; i >= 0; i--) {
+                    int move = parseHistory(game.moveHistory.get(i));
+                    int to = AIPlayer.Move.to(move);
+                    int mover = -1;
+                    for (int p = 0; p < bb.pieces.length; p++)
+                        if ((bb.pieces[p] & (1L << to)) != 0)
+                            mover = p;
+                    if (mover < 0)
+                        break; // the history does not match the board
+                    if (AIPlayer.Move.isPlacement(move))
+                        bb.remove(mover, to);
+                    else
+                        bb.move(mover, to, AIPlayer.Move.from(move));
+                    if (mover == loser) {
+                        if (room-- == 0)
+                            break; // a longer loss would evict its own final moves
+                        long key = pairKey(bb, mover, move);
+                        if (lastLost == 0)
+                            lastLost = key;
+                        if (put(key, 0, clock))
+                            learned[n++] = key;
+                    }
+                }
+                // Players move in turn, so a history of a full round holds a move of the loser
+                assert lastLost != 0 || game.moveHistory.size() < game.players.length
+                        : "the move history is missing the loser's moves";
+                assert lastLost == 0 || find(lastLost) >= 0 : "lost game left no memory entry";
+                scheduleWrite(java.util.Arrays.copyOf(learned, n));
+            }
+        }
+
+        /** Parses a move history entry ("P:c,r" or "M:c,r:c,r"). */
+        static int parseHistory(String entry) {
+            String[] parts = entry.split(":");
+            String[] to = parts[parts.length - 1].split(",");
+            int toSq = BitBoard.square(Integer.parseInt(to[0]), Integer.parseInt(to[1]));
+            if (parts.length < 3)
+                return AIPlayer.Move.placementCode(toSq);
+            String[] from = parts[1].split(",");
+            return AIPlayer.Move.stepCode(BitBoard.square(Integer.parseInt(from[0]), Integer.parseInt(from[1])), toSq);
+        }
+
+        /**
+         * Queues the file update after a recorded loss: a compaction if the file
+         * holds many evicted records, would outgrow its limit, is not in the current
+         * format, or many hits are unsaved; otherwise an append of the new keys.
+         * Called with the lock held, so the snapshot matches the queue order.
+         */
+        private void scheduleWrite(long[] added) {
+            long appendedBytes = HEADER_BYTES + (long) (fileRecords + added.length) * RECORD_BYTES;
+            boolean compact = !fileValid || fileRecords + added.length > size + size / 2 + 16
+                    || appendedBytes > maxFileBytes || dirtyHits >= COMPACT_AFTER_HITS;
+            if (compact) {
+                java.nio.ByteBuffer buf = java.nio.ByteBuffer.allocate(HEADER_BYTES + size * RECORD_BYTES);
+                buf.putInt(MAGIC).putInt(VERSION).putInt(clock);
+                for (int i = 0; i < keys.length; i++)
+                    if (keys[i] != 0)
+                        buf.putLong(keys[i]).putInt(hits[i]).putInt(lastUse[i]);
+                buf.flip();
+                fileRecords = size;
+                fileValid = true;
+                dirtyHits = 0;
+                WRITER.execute(() -> replaceFile(buf));
+            } else if (added.length > 0) {
+                java.nio.ByteBuffer buf = java.nio.ByteBuffer.allocate(added.length * RECORD_BYTES);
+                for (long k : added)
+                    buf.putLong(k).putInt(0).putInt(clock);
+                buf.flip();
+                fileRecords += added.length;
+                int header = clock;
+                WRITER.execute(() -> appendFile(buf, header));
+            }
+        }
+
+        /** Writes the whole memory next to the file, then moves it into place. */
+        private void replaceFile(java.nio.ByteBuffer buf) {
+            java.nio.file.Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+            try {
+                try (java.nio.channels.FileChannel ch = java.nio.channels.FileChannel.open(tmp,
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    while (buf.hasRemaining())
+                        ch.write(buf);
+                    ch.force(true);
+                }
+                try {
+                    Files.move(tmp, path, java.nio.file.StandardCopyOption.ATOMIC_MOVE,
+                            java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+                } catch (java.nio.file.AtomicMoveNotSupportedException e) {
+                    Files.move(tmp, path, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        /** Appends records and updates the clock in the header. */
+        private void appendFile(java.nio.ByteBuffer buf, int headerClock) {
+            try (java.nio.channels.FileChannel ch = java.nio.channels.FileChannel.open(path,
+                    StandardOpenOption.WRITE)) {
+                ch.position(ch.size());
+                while (buf.hasRemaining())
+                    ch.write(buf);
+                ch.write(java.nio.ByteBuffer.allocate(4).putInt(0, headerClock), 8);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // =========================
+    // OpeningBook
+    // =========================
+    /**
+     * Precomputed SMART moves for early placement positions, read from a
+     * memory-mapped file so a lookup is a binary search in the OS page cache and
+     * the heap stays flat however large the book is.
+     *
+     * File layout (big-endian): the magic "C5BK", a version int and an entry
+     * count, then the entries sorted by key, 16 bytes each: the position's
+     * canonical key (with the side to move), the best move in the canonical
+     * orientation and its score. Build one with
+     * {@code java FinalProject.Connect5GUI --build-book [plies] [depth] [players] [file]}.
+     */
+    static class OpeningBook {
+        static final String BOOK_FILE = "ai_book.bin";
+        private static final int MAGIC = 0x4335424B; // "C5BK"
+        private static final int VERSION = 1;
+        private static final int HEADER_BYTES = 12;
+        private static final int ENTRY_BYTES = 16;
+
+        private static OpeningBook shared;
+        private static boolean sharedLoaded;
+
+        private final java.nio.MappedByteBuffer buf;
+        private final int count;
+
+        private OpeningBook(java.nio.MappedByteBuffer buf, int count) {
+            this.buf = buf;
+            this.count = count;
+        }
+
+        /** The book in the working directory, mapped on first use; null if there is none. */
+        static synchronized OpeningBook shared() {
+            if (!sharedLoaded) {
+                sharedLoaded = true;
+                shared = open(Paths.get(BOOK_FILE));
+            }
+            return shared;
+        }
+
+        /**
+         * Maps a book file.
+         * 
+         * @return The book, or null if the file is missing or not a book
+         */
+        static OpeningBook open(java.nio.file.Path path) {
+            if (!Files.exists(path))
+                return null;
+            try (java.nio.channels.FileChannel ch = java.nio.channels.FileChannel.open(path,
+                    StandardOpenOption.READ)) {
+                // The mapping stays valid after the channel is closed
+                java.nio.MappedByteBuffer buf = ch.map(java.nio.channels.FileChannel.MapMode.READ_ONLY, 0,
+                        ch.size());
+                if (buf.capacity() < HEADER_BYTES || buf.getInt(0) != MAGIC || buf.getInt(4) != VERSION)
+                    return null;
+                int count = buf.getInt(8);
+                if ((long) HEADER_BYTES + (long) count * ENTRY_BYTES > buf.capacity())
+                    return null;
+                return new OpeningBook(buf, count);
+            } catch (IOException e) {
+                return null;
+            }
+        }
+
+        int size() {
+            return count;
+        }
+
+        /**
+         * Looks up the book move for a position.
+         * 
+         * @param bb     The position
+         * @param toMove Index of the player to move
+         * @return The encoded move in bb's orientation, or 0 if the position is not
+         *         in the book
+         */
+        int probe(BitBoard bb, int toMove) {
+            int sym = bb.canonicalSymmetry();
+            long key = bb.symmetricKey(sym, toMove);
+            int lo = 0, hi = count - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                long k = buf.getLong(HEADER_BYTES + mid * ENTRY_BYTES);
+                if (k < key)
+                    lo = mid + 1;
+                else if (k > key)
+                    hi = mid - 1;
+                else
+                    return AIPlayer.Move.transform(buf.getInt(HEADER_BYTES + mid * ENTRY_BYTES + 8),
+                            BitBoard.INVERSE[sym]);
+            }
+            return 0;
+        }
+
+        // ---------- Builder ----------
+
+        /** A position waiting to be searched, and which players it is a book line for. */
+        private static final class Node {
+            final BitBoard bb;
+            final int toMove;
+            int roles; // bit p: reachable with player p following the book
+
+            Node(BitBoard bb, int toMove, int roles) {
+                this.bb = bb;
+                this.toMove = toMove;
+                this.roles = roles;
+            }
+        }
+
+        /**
+         * Builds a book by searching every position reachable in the first plies
+         * placements in which one player (any of them, moving first or not) follows
+         * the book and the others play anything. Symmetric positions are searched
+         * once.
+         */
+        static void build(String[] args) throws IOException {
+            int plies = (args.length > 1) ? Integer.parseInt(args[1]) : 4;
+            int depth = (args.length > 2) ? Integer.parseInt(args[2]) : 6;
+            int players = (args.length > 3) ? Integer.parseInt(args[3]) : 2;
+            String file = (args.length > 4) ? args[4] : BOOK_FILE;
+
+            char[] syms = java.util.Arrays.copyOf(COLOR_ORDER, players);
+            // One searcher per player: search scores are from the mover's point of view
+            AIPlayer[] searchers = new AIPlayer[players];
+            for (int p = 0; p < players; p++)
+                searchers[p] = new AIPlayer("Book " + (p + 1), syms[p], "SMART");
+
+            java.util.Map<Long, Node> level = new java.util.LinkedHashMap<>();
+            for (int first = 0; first < players; first++) {
+                BitBoard empty = new BitBoard(syms);
+                level.put(empty.canonicalKey(first), new Node(empty, first, (1 << players) - 1));
+            }
+
+            java.util.TreeMap<Long, long[]> entries = new java.util.TreeMap<>();
+            long start = System.currentTimeMillis();
+            for (int ply = 0; ply < plies && !level.isEmpty(); ply++) {
+                System.out.println("Ply " + ply + ": " + level.size() + " positions");
+                java.util.Map<Long, Node> next = new java.util.LinkedHashMap<>();
+                for (java.util.Map.Entry<Long, Node> e : level.entrySet()) {
+                    Node node = e.getValue();
+                    AIPlayer ai = searchers[node.toMove];
+                    Game game = gameFor(node.bb, syms, node.toMove);
+                    int[] moves = new int[AIPlayer.MAX_MOVES];
+                    int n = AIPlayer.generateMoves(node.bb, node.toMove, true, moves);
+                    if (n == 0)
+                        continue;
+                    int best = ai.pickIterativeDeepening(game, node.bb, node.toMove, moves, new int[n], n, depth,
+                            TimeManager.fixed(Long.MAX_VALUE / 4));
+                    int sym = node.bb.canonicalSymmetry();
+                    entries.put(e.getKey(), new long[] { AIPlayer.Move.transform(best, sym), ai.bestScore });
+
+                    if (ply + 1 == plies)
+                        continue;
+                    int nextToMove = (node.toMove + 1) % players;
+                    for (int r = 0; r < players; r++) {
+                        if ((node.roles & (1 << r)) == 0)
+                            continue;
+                        if (r == node.toMove) {
+                            addChild(next, node.bb, best, node.toMove, nextToMove, r);
+                        } else {
+                            for (int i = 0; i < n; i++)
+                                addChild(next, node.bb, moves[i], node.toMove, nextToMove, r);
+                        }
+                    }
+                }
+                level = next;
+            }
+
+            java.nio.file.Path target = Paths.get(file);
+            java.nio.file.Path tmp = Paths.get(file + ".tmp");
+            try (java.io.DataOutputStream out = new java.io.DataOutputStream(
+                    new java.io.BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(entries.size());
+                for (java.util.Map.Entry<Long, long[]> e : entries.entrySet()) {
+                    out.writeLong(e.getKey());
+                    out.writeInt((int) e.getValue()[0]);
+                    out.writeInt((int) e.getValue()[1]);
+                }
+            }
+            Files.move(tmp, target, java.nio.file.StandardCopyOption.REPLACE_EXISTING,
+                    java.nio.file.StandardCopyOption.ATOMIC_MOVE);
+            System.out.println("Wrote " + entries.size() + " positions to " + file + " in "
+                    + (System.currentTimeMillis() - start) / 1000 + " s");
+        }
+
+        private static void addChild(java.util.Map<Long, Node> next, BitBoard bb, int move, int mover, int toMove,
+                int role) {
+            BitBoard child = bb.copy();
+            child.place(mover, AIPlayer.Move.to(move));
+            if (child.winsThrough(mover, AIPlayer.Move.to(move)))
+                return;
+            long key = child.canonicalKey(toMove);
+            Node existing = next.get(key);
+            if (existing != null)
+                existing.roles |= 1 << role;
+            else
+                next.put(key, new Node(child, toMove, 1 << role));
+        }
+
+        /** A placement-phase game on the given position with player toMove to move. */
+        private static Game gameFor(BitBoard bb, char[] syms, int toMove) {
+            Player[] players = new Player[syms.length];
+            for (int p = 0; p < syms.length; p++)
+                players[p] = new Player("P" + (p + 1), syms[p]);
+            Game game = new Game(5, 8, null, players, toMove);
+            for (int sq = 0; sq < 64; sq++) {
+                for (int p = 0; p < syms.length; p++) {
+                    if ((bb.pieces[p] & (1L << sq)) != 0) {
+                        game.board.grid[sq >>> 3][sq & 7] = syms[p];
+                        players[p].piecesPlaced++;
+                    }
+                }
+            }
+            game.gamePhase = "PLACEMENT";
+            return game;
+        }
+    }
+
+    // =========================
+    // MonteCarloSearch
+    // =========================
+    /**
+     * UCT Monte Carlo tree search, the engine of the MCTS difficulty. It needs no
+     * evaluation function and handles any number of players natively: a node
+     * holds the reward of the player who moved into it, and each player picks the
+     * child that is best for itself (max^n UCT). Playouts run on bare bitboard
+     * words with a light policy: complete five if possible, otherwise block the
+     * next player's five, otherwise a random move, in placement preferably next to
+     * the pieces already on the board.
+     *
+     * All threads grow one shared tree (tree parallelism). A visit is counted on
+     * the way down and its reward only after the playout, so a line being played
+     * out looks like a loss to the other threads for the moment (virtual loss)
+     * and they spread out over different lines.
+     */
+    static class MonteCarloSearch {
+        private static final double EXPLORATION = 1.0; // UCT constant; rewards are in [0, 1]
+        private static final int NEAR_PERCENT = 80; // placement playouts that stay next to pieces
+        private static final int PLACEMENT_LIMIT = 8;
+        private static final int TURN_LIMIT = 300; // Game declares a draw here
+        private static final int CHECK_MASK = 63; // stop conditions are read every 64 playouts
+
+        private final int players;
+        private final int maxMoves;
+        private final java.util.concurrent.atomic.AtomicLong playouts = new java.util.concurrent.atomic.AtomicLong();
+        private long elapsedMs;
+
+        /** A position in the tree, reached by move from its parent. */
+        private static final class Node {
+            final int move;
+            final int mover; // player who made the move
+            final int winner; // mover if the move completed five, else -1
+            volatile Node[] children; // null until expanded; empty if the mover's successor is stuck
+            final java.util.concurrent.atomic.AtomicInteger visits = new java.util.concurrent.atomic.AtomicInteger();
+            final java.util.concurrent.atomic.AtomicLong reward = new java.util.concurrent.atomic.AtomicLong();
+
+            Node(int move, int mover, int winner) {
+                this.move = move;
+                this.mover = mover;
+                this.winner = winner;
+            }
+        }
+
+        /**
+         * @param players  Number of players in the game
+         * @param maxMoves Movement-phase move limit per player
+         */
+        MonteCarloSearch(int players, int maxMoves) {
+            this.players = players;
+            this.maxMoves = maxMoves;
+        }
+
+        long playouts() {
+            return playouts.get();
+        }
+
+        long elapsedMs() {
+            return elapsedMs;
+        }
+
+        /** Playouts per second of the last search. */
+        long playoutsPerSecond() {
+            return playouts.get() * 1000 / Math.max(1, elapsedMs);
+        }
+
+        /**
+         * Searches the game's position for the player to move.
+         * 
+         * @param game         The game (for move counts and the turn number)
+         * @param bb           Its position
+         * @param threads      Threads growing the tree, at least 1
+         * @param time         Budget; the search stops at its target time
+         * @param playoutLimit Stop after this many playouts, 0 = no limit
+         * @param stop         Polled; true aborts the search
+         * @return The encoded move visited most often, or 0 if there is none
+         */
+        int search(Game game, BitBoard bb, int threads, TimeManager time, long playoutLimit,
+                java.util.function.BooleanSupplier stop) {
+            long start = System.currentTimeMillis();
+            playouts.set(0);
+            int toMove = game.currentPlayerIndex;
+            int[] movesMade = new int[players];
+            for (int p = 0; p < players; p++)
+                movesMade[p] = game.players[p].movesMade;
+            State rootState = new State(bb.pieces, movesMade, toMove, game.turnCount);
+            Node root = new Node(0, (toMove + players - 1) % players, -1);
+
+            Runnable worker = () -> {
+                State s = new State(bb.pieces, movesMade, toMove, game.turnCount);
+                java.util.SplittableRandom rnd = new java.util.SplittableRandom();
+                Node[] path = new Node[TURN_LIMIT + 1];
+                for (long i = 0;; i++) {
+                    if ((i & CHECK_MASK) == 0 && (stop.getAsBoolean() || time.reachedTarget()
+                            || (playoutLimit > 0 && playouts.get() >= playoutLimit)))
+                        return;
+                    s.copyFrom(rootState);
+                    iterate(root, s, path, rnd);
+                    playouts.incrementAndGet();
+                }
+            };
+            java.util.List<java.util.concurrent.Future<?>> helpers = new java.util.ArrayList<>();
+            for (int t = 1; t < threads; t++)
+                helpers.add(AIPlayer.HELPER_POOL.submit(worker));
+            worker.run();
+            for (java.util.concurrent.Future<?> f : helpers) {
+                try {
+                    f.get();
+                } catch (Exception ignored) {
+                }
+            }
+            elapsedMs = System.currentTimeMillis() - start;
+
+            Node[] children = root.children;
+            Node best = null;
+            if (children != null)
+                for (Node c : children)
+                    if (best == null || c.visits.get() > best.visits.get())
+                        best = c;
+            return best == null ? 0 : best.move;
+        }
+
+        /** One selection, expansion, playout and backup from the root. */
+        private void iterate(Node root, State s, Node[] path, java.util.SplittableRandom rnd) {
+            int length = 0;
+            Node node = root;
+            node.visits.incrementAndGet();
+            path[length++] = node;
+            int winner;
+            while (true) {
+                if (node.winner >= 0) {
+                    winner = node.winner;
+                    break;
+                }
+                Node[] children = node.children;
+                if (children == null) {
+                    if (node != root && node.visits.get() <= 1) {
+                        // First visit: play out from here
+                        winner = s.playout(rnd);
+                        break;
+                    }
+                    children = expand(node, s);
+                }
+                if (children.length == 0 || s.turn >= TURN_LIMIT) {
+                    winner = -1; // stuck or out of turns: a draw
+                    break;
+                }
+                node = select(node, children);
+                node.visits.incrementAndGet();
+                path[length++] = node;
+                s.play(node.move);
+            }
+            for (int i = 0; i < length; i++) {
+                Node n = path[i];
+                n.reward.addAndGet(winner == n.mover ? players : winner < 0 ? 1 : 0);
+            }
+        }
+
+        /** Creates the node's children once; a winning move, if any, is kept alone. */
+        private Node[] expand(Node node, State s) {
+            synchronized (node) {
+                Node[] children = node.children;
+                if (children != null)
+                    return children;
+                int[] moves = new int[AIPlayer.MAX_MOVES];
+                int n = s.generate(moves);
+                int mover = s.toMove;
+                children = new Node[n];
+                for (int i = 0; i < n; i++) {
+                    if (s.wins(moves[i])) {
+                        children = new Node[] { new Node(moves[i], mover, mover) };
+                        break;
+                    }
+                    children[i] = new Node(moves[i], mover, -1);
+                }
+                node.children = children;
+                return children;
+            }
+        }
+
+        /** UCT: the child best for the player to move, unvisited children first. */
+        private Node select(Node parent, Node[] children) {
+            double logParent = Math.log(Math.max(1, parent.visits.get()));
+            Node best = children[0];
+            double bestValue = Double.NEGATIVE_INFINITY;
+            for (Node c : children) {
+                int v = c.visits.get();
+                if (v == 0)
+                    return c;
+                double value = c.reward.get() / ((double) players * v) + EXPLORATION * Math.sqrt(logParent / v);
+                if (value > bestValue) {
+                    bestValue = value;
+                    best = c;
+                }
+            }
+            return best;
+        }
+
+        /** Playout position: one word per player plus the counters the rules need. */
+        private final class State {
+            final long[] pieces;
+            long occupied;
+            final int[] placed;
+            final int[] movesMade;
+            int toMove;
+            int turn;
+            private final int[] moves = new int[AIPlayer.MAX_MOVES];
+
+            State(long[] pieces, int[] movesMade, int toMove, int turn) {
+                this.pieces = pieces.clone();
+                this.movesMade = movesMade.clone();
+                this.placed = new int[players];
+                this.toMove = toMove;
+                this.turn = turn;
+                for (int p = 0; p < players; p++) {
+                    occupied |= pieces[p];
+                    placed[p] = Long.bitCount(pieces[p]);
+                }
+            }
+
+            void copyFrom(State o) {
+                System.arraycopy(o.pieces, 0, pieces, 0, players);
+                System.arraycopy(o.placed, 0, placed, 0, players);
+                System.arraycopy(o.movesMade, 0, movesMade, 0, players);
+                occupied = o.occupied;
+                toMove = o.toMove;
+                turn = o.turn;
+            }
+
+            boolean placementPhase() {
+                for (int p = 0; p < players; p++)
+                    if (placed[p] < PLACEMENT_LIMIT)
+                        return true;
+                return false;
+            }
+
+            /** Legal moves of the player to move, in AIPlayer.Move encoding. */
+            int generate(int[] out) {
+                int n = 0;
+                if (placementPhase()) {
+                    if (placed[toMove] >= PLACEMENT_LIMIT)
+                        return 0;
+                    for (long empty = ~occupied; empty != 0; empty &= empty - 1)
+                        out[n++] = AIPlayer.Move.placementCode(Long.numberOfTrailingZeros(empty));
+                } else {
+                    if (movesMade[toMove] >= maxMoves)
+                        return 0;
+                    for (long own = pieces[toMove]; own != 0; own &= own - 1) {
+                        int from = Long.numberOfTrailingZeros(own);
+                        for (long to = BitBoard.NEIGHBORS[from] & ~occupied; to != 0; to &= to - 1)
+                            out[n++] = AIPlayer.Move.stepCode(from, Long.numberOfTrailingZeros(to));
+                    }
+                }
+                return n;
+            }
+
+            /** True if the move completes five for the player to move. */
+            boolean wins(int m) {
+                int to = AIPlayer.Move.to(m);
+                long own = pieces[toMove] | (1L << to);
+                if (!AIPlayer.Move.isPlacement(m))
+                    own &= ~(1L << AIPlayer.Move.from(m));
+                for (int w : BitBoard.WINDOWS_THROUGH[to])
+                    if ((own & BitBoard.WINDOW_MASK[w]) == BitBoard.WINDOW_MASK[w])
+                        return true;
+                return false;
+            }
+
+            void play(int m) {
+                long to = 1L << AIPlayer.Move.to(m);
+                if (AIPlayer.Move.isPlacement(m)) {
+                    placed[toMove]++;
+                } else {
+                    long from = 1L << AIPlayer.Move.from(m);
+                    pieces[toMove] &= ~from;
+                    occupied &= ~from;
+                    movesMade[toMove]++;
+                }
+                pieces[toMove] |= to;
+                occupied |= to;
+                toMove = (toMove + 1) % players;
+                turn++;
+            }
+
+            /** Empty squares that complete five for the player's pieces. */
+            long fiveSquares(int player) {
+                return ThreatMap.fiveSquares(pieces[player], occupied);
+            }
+
+            /**
+             * Plays random moves to the end of the game.
+             * 
+             * @return The winner, or -1 for a draw
+             */
+            int playout(java.util.SplittableRandom rnd) {
+                while (turn < TURN_LIMIT) {
+                    int m;
+                    if (placementPhase()) {
+                        if (placed[toMove] >= PLACEMENT_LIMIT)
+                            return -1;
+                        long win = fiveSquares(toMove);
+                        if (win != 0) {
+                            return toMove;
+                        }
+                        long block = fiveSquares((toMove + 1) % players);
+                        long empty = ~occupied;
+                        long near = empty & neighbours(occupied);
+                        long pool = block != 0 ? block
+                                : (near != 0 && rnd.nextInt(100) < NEAR_PERCENT) ? near : empty;
+                        m = AIPlayer.Move.placementCode(randomSquare(pool, rnd));
+                    } else {
+                        int n = generate(moves);
+                        if (n == 0)
+                            return -1;
+                        if (ThreatMap.firstWin(pieces[toMove], occupied, false, false) != 0)
+                            return toMove;
+                        m = moves[rnd.nextInt(n)];
+                    }
+                    play(m);
+                }
+                return -1;
+            }
+        }
+
+        /** Squares next to any of the given squares. */
+        private static long neighbours(long b) {
+            long h = b | ((b << 1) & ~BitBoard.FILE_A) | ((b >>> 1) & ~BitBoard.FILE_H);
+            return h | (h << 8) | (h >>> 8);
+        }
+
+        private static int randomSquare(long squares, java.util.SplittableRandom rnd) {
+            for (int k = rnd.nextInt(Long.bitCount(squares)); k > 0; k--)
+                squares &= squares - 1;
+            return Long.numberOfTrailingZeros(squares);
+        }
+    }
+
+    // =========================
+    // ProofSolver
+    // =========================
+    /**
+     * Depth-first proof-number (df-pn) solver for post-game analysis: decides
+     * whether a player can force a win from a position under the full game rules
+     * (placement, then adjacent steps limited to maxMoves per player). Unlike the
+     * SMART search it gives exact answers, or none when the node limit runs out.
+     *
+     * A state is the canonical position plus every player's moves made, which
+     * only grow, so the game graph has no cycles. A player who cannot move
+     * (nothing left to place, or no step or moves left) stalls the game, which
+     * counts as a draw. With more than two players a player "wins by force" only
+     * if it wins against all others working together.
+     * Run with {@code java FinalProject.Connect5GUI --solve <savefile> [nodeLimit] [tableMB]}.
+     */
+    static class ProofSolver {
+        static final int UNKNOWN = 0, PROVEN = 1, DISPROVEN = 2;
+        private static final int INF = 100_000_000;
+
+        private final BitBoard bb;
+        private final int players;
+        private final int[] movesMade;
+        private final int maxMoves;
+        private final long[][] moveKeys; // [player][moves made] hashed into the state key
+        private long movesHash;
+
+        // Memory-bounded table of proof and disproof numbers, direct-mapped
+        private final long[] keys;
+        private final int[] pns, dns;
+        private final int mask;
+
+        private final long nodeLimit;
+        private long nodes;
+        private int attacker;
+        private boolean aborted;
+
+        // Per-ply move lists and child proof/disproof numbers. A node
+        // keeps its children's numbers itself, so an entry lost to the bounded
+        // table never stalls the search.
+        private final int[][] moveStack;
+        private final int[][] pnStack, dnStack;
+
+        private int pn, dn; // result of the last mid() call
+        private int rootMoves; // children of the last root, still in moveStack[0] with their numbers
+
+        /**
+         * @param bb        The position (restored after each solve)
+         * @param movesMade Movement-phase moves made so far per player
+         * @param maxMoves  Movement-phase move limit per player
+         * @param nodeLimit Expansions allowed per solve
+         * @param tableMB   Size of the proof-number table
+         */
+        ProofSolver(BitBoard bb, int[] movesMade, int maxMoves, long nodeLimit, int tableMB) {
+            this.bb = bb;
+            this.players = bb.pieces.length;
+            this.movesMade = movesMade.clone();
+            this.maxMoves = maxMoves;
+            this.nodeLimit = nodeLimit;
+
+            moveKeys = new long[players][maxMoves + 1];
+            long seed = 0x5DEECE66DL;
+            for (int p = 0; p < players; p++)
+                for (int m = 0; m <= maxMoves; m++)
+                    moveKeys[p][m] = seed = BitBoard.splitMix(seed);
+            for (int p = 0; p < players; p++)
+                movesHash ^= moveKeys[p][Math.min(this.movesMade[p], maxMoves)];
+
+            int size = Integer.highestOneBit(Math.max(1, (int) ((long) tableMB * 1024 * 1024 / 16)));
+            keys = new long[size];
+            pns = new int[size];
+            dns = new int[size];
+            mask = size - 1;
+
+            int plies = 2;
+            for (int p = 0; p < players; p++)
+                plies += Math.max(0, 8 - bb.count(p)) + Math.max(0, maxMoves - this.movesMade[p]); // PLACEMENT_LIMIT
+            moveStack = new int[plies][AIPlayer.MAX_MOVES];
+            pnStack = new int[plies][AIPlayer.MAX_MOVES];
+            dnStack = new int[plies][AIPlayer.MAX_MOVES];
+        }
+
+        long nodes() {
+            return nodes;
+        }
+
+        /**
+         * Tries to prove that the attacker can force a win with toMove to move.
+         * 
+         * @return PROVEN, DISPROVEN, or UNKNOWN if the node limit was reached
+         */
+        int solve(int attacker, int toMove) {
+            this.attacker = attacker;
+            this.nodes = 0;
+            this.aborted = false;
+            java.util.Arrays.fill(keys, 0L); // entries are only valid for one attacker
+            mid(toMove, 0, INF, INF);
+            if (aborted) {
+                rootMoves = 0;
+                return UNKNOWN;
+            }
+            return pn == 0 ? PROVEN : dn == 0 ? DISPROVEN : UNKNOWN;
+        }
+
+        /**
+         * After a PROVEN solve with the attacker to move: the root move of the proof.
+         * 
+         * @return The encoded move, or 0 if none is known
+         */
+        int winningMove() {
+            for (int i = 0; i < rootMoves; i++)
+                if (pnStack[0][i] == 0)
+                    return moveStack[0][i];
+            return 0;
+        }
+
+        private long stateKey(int toMove) {
+            return bb.canonicalKey(toMove) ^ movesHash;
+        }
+
+        /** Fills the ply's move list and child numbers; returns the move count. */
+        private int generateChildren(int toMove, int ply) {
+            boolean placement = AIPlayer.isPlacementPhase(bb);
+            int[] moves = moveStack[ply];
+            int n = (!placement && movesMade[toMove] >= maxMoves) ? 0
+                    : AIPlayer.generateMoves(bb, toMove, placement, moves);
+            int next = (toMove + 1) % players;
+            for (int i = 0; i < n; i++) {
+                int m = moves[i];
+                apply(m, toMove);
+                long key = stateKey(next);
+                if (bb.winsThrough(toMove, AIPlayer.Move.to(m)) && toMove == attacker) {
+                    pnStack[ply][i] = 0;
+                    dnStack[ply][i] = INF;
+                } else if (bb.winsThrough(toMove, AIPlayer.Move.to(m)) || outOfReach()) {
+                    pnStack[ply][i] = INF;
+                    dnStack[ply][i] = 0;
+                } else {
+                    int slot = (int) key & mask;
+                    boolean hit = keys[slot] == key;
+                    // Unseen positions where the attacker threatens five look closer to a proof
+                    boolean threat = !hit && bb.eval.emptiesOfWindows(bb, attacker, 4) != 0;
+                    pnStack[ply][i] = hit ? pns[slot] : threat ? 1 : 2;
+                    dnStack[ply][i] = hit ? dns[slot] : threat ? 2 : 1;
+                }
+                undo(m, toMove);
             }
-
-            score += centerControl(grid, me) * 4;
-            return score;
+            return n;
         }
 
         /**
-         * Evaluates a single window (line) on the board.
-         * Distinguishes between open and closed lines for accurate scoring.
-         * 
-         * @param grid The board grid
-         * @param r0   Starting row
-         * @param c0   Starting column
-         * @param dr   Row direction delta
-         * @param dc   Column direction delta
-         * @param me   The player symbol to evaluate for
-         * @param len  The window length (connect target)
-         * @return The score for this window
-         */
-        private int windowScore(char[][] grid, int r0, int c0, int dr, int dc, char me, int len) {
-            int meCount = 0;
-            int oppCount = 0;
-
-            for (int i = 0; i < len; i++) {
-                char v = grid[r0 + dr * i][c0 + dc * i];
-                if (v == me)
-                    meCount++;
-                else if (v != EMPTY)
-                    oppCount++;
-                else
-                    ; // empty
-            }
+         * True if the attacker cannot complete five any more: each placement or step
+         * adds at most one piece to a window, and too few of them are left.
+         */
+        private boolean outOfReach() {
+            int left = Math.max(0, 8 - bb.count(attacker)) + Math.max(0, maxMoves - movesMade[attacker]);
+            return bb.eval.maxCount(attacker) + left < 5;
+        }
 
-            // If mixed with opponent pieces, it's blocked (useless for me)
-            if (meCount > 0 && oppCount > 0)
-                return 0;
+        private void apply(int m, int player) {
+            if (AIPlayer.Move.isPlacement(m)) {
+                bb.place(player, AIPlayer.Move.to(m));
+            } else {
+                bb.move(player, AIPlayer.Move.from(m), AIPlayer.Move.to(m));
+                movesHash ^= moveKeys[player][movesMade[player]] ^ moveKeys[player][movesMade[player] + 1];
+                movesMade[player]++;
+            }
+        }
 
-            // If only opponent pieces (and empty), negative score?
-            // The heuristic function calls this for "me" and "opp" separately,
-            // so here we only yield positive points for "me" presence.
-            if (meCount == 0)
-                return 0; // Purely empty or purely opponent is handled when we evaluate opponent
-
-            // Determine if the line is OPEN (both ends empty/available) or CLOSED (one end
-            // blocked)
-            // We need to look at the cells immediately before and after the window, if they
-            // exist.
-            boolean openStart = false;
-            boolean openEnd = false;
-
-            int rStart = r0 - dr;
-            int cStart = c0 - dc;
-            if (rStart >= 0 && rStart < 8 && cStart >= 0 && cStart < 8) {
-                if (grid[rStart][cStart] == EMPTY)
-                    openStart = true;
-            }
-
-            int rEnd = r0 + dr * len;
-            int cEnd = c0 + dc * len;
-            if (rEnd >= 0 && rEnd < 8 && cEnd >= 0 && cEnd < 8) {
-                if (grid[rEnd][cEnd] == EMPTY)
-                    openEnd = true;
-            }
-
-            // Scoring Weights
-            if (meCount == 5)
-                return 1_000_000; // WIN
-
-            if (meCount == 4) {
-                if (openStart && openEnd)
-                    return 900_000; // OPEN 4: Unstoppable
-                if (openStart || openEnd)
-                    return 50_000; // CLOSED 4: Must block
-                return 1000; // Dead 4 (blocked both ends, but technically 5 pieces fit in window? No, window
-                             // is 5.)
-                // Actually if window is size 5 and we have 4, there is 1 empty spot INSIDE.
-                // So it's not fully blocked. "Open/Closed" refers to external growth potential
-                // but for Connect 5, an empty spot inside IS the growth potential.
-                // Re-think: "Open 4" usually means .XXXX. which is 6 slots.
-                // Here we evaluate a 5-slot window.
-                // If 4 pieces + 1 empty in a 5-slot window, that IS a potential win.
-                // We don't need external checks as much as internal checks.
-            }
-
-            // Standard Connect-4/5 logic usually looks at larger patterns,
-            // but fixed window-5 is simple.
-            // Let's stick to the prompt's request: ".XXX." vs "OXXX."
-            // That implies checking OUTSIDE the window.
-            // My openStart/openEnd checks do exactly that.
-
-            if (meCount == 3) {
-                // XXX.. or .XXX. or ..XXX inside the window
-                if (openStart && openEnd)
-                    return 50_000; // OPEN 3 (.XXX.) -> Very dangerous
-                if (openStart || openEnd)
-                    return 1000; // CLOSED 3 (OXXX.) -> Manageable
-                return 100; // Blocked 3
-            }
-
-            if (meCount == 2) {
-                if (openStart && openEnd)
-                    return 500;
-                return 50;
-            }
-
-            return 10;
-        }
-
-        private int centerControl(char[][] grid, char sym) {
-            int count = 0;
-            for (int r = 2; r <= 5; r++)
-                for (int c = 2; c <= 5; c++)
-                    if (grid[r][c] == sym)
-                        count++;
-            return count;
+        private void undo(int m, int player) {
+            if (AIPlayer.Move.isPlacement(m)) {
+                bb.remove(player, AIPlayer.Move.to(m));
+            } else {
+                movesMade[player]--;
+                movesHash ^= moveKeys[player][movesMade[player]] ^ moveKeys[player][movesMade[player] + 1];
+                bb.move(player, AIPlayer.Move.to(m), AIPlayer.Move.from(m));
+            }
         }
 
-        private char[][] copyGrid(char[][] src) {
-            char[][] dst = new char[8][8];
-            for (int r = 0; r < 8; r++)
-                System.arraycopy(src[r], 0, dst[r], 0, 8);
-            return dst;
+        private void store(long key, int p, int d) {
+            int i = (int) key & mask;
+            boolean solved = p == 0 || d == 0;
+            if (keys[i] != key && keys[i] != 0 && (pns[i] == 0 || dns[i] == 0) && !solved)
+                return; // keep a solved entry over an open one
+            keys[i] = key;
+            pns[i] = p;
+            dns[i] = d;
         }
 
-        private void applyMove(char[][] grid, Move m, char sym) {
-            if (m.placement)
-                grid[m.toR][m.toC] = sym;
-            else {
-                grid[m.fromR][m.fromC] = EMPTY;
-                grid[m.toR][m.toC] = sym;
+        /**
+         * Expands the node until its proof or disproof number reaches its threshold
+         * (Nagai's multiple iterative deepening). Leaves the results in pn and dn.
+         */
+        private void mid(int toMove, int ply, int thpn, int thdn) {
+            if (++nodes > nodeLimit)
+                aborted = true;
+            long key = stateKey(toMove);
+            int n = aborted ? 0 : generateChildren(toMove, ply);
+            if (ply == 0)
+                rootMoves = n; // the capped list winningMove reads back
+            if (n == 0) {
+                // Stalled (or out of budget): a draw, so no win for the attacker
+                pn = INF;
+                dn = 0;
+                if (!aborted)
+                    store(key, pn, dn);
+                return;
             }
-        }
+            boolean or = (toMove == attacker);
+            int next = (toMove + 1) % players;
+            int[] moves = moveStack[ply];
+            int[] childPns = pnStack[ply], childDns = dnStack[ply];
+
+            while (true) {
+                // OR node: pn = min, dn = sum over children; AND node the other way round
+                int minVal = INF, secondVal = INF, best = -1;
+                long sum = 0;
+                for (int i = 0; i < n; i++) {
+                    int cp = childPns[i], cd = childDns[i];
+                    int select = or ? cp : cd;
+                    sum += or ? cd : cp;
+                    if (select < minVal) {
+                        secondVal = minVal;
+                        minVal = select;
+                        best = i;
+                    } else if (select < secondVal) {
+                        secondVal = select;
+                    }
+                }
+                int total = (int) Math.min(sum, INF);
+                pn = or ? minVal : total;
+                dn = or ? total : minVal;
+                if (pn >= thpn || dn >= thdn || pn == 0 || dn == 0 || aborted)
+                    break;
 
-        private void undoMove(char[][] grid, Move m, char sym) {
-            if (m.placement) {
-                grid[m.toR][m.toC] = EMPTY;
-            } else {
-                grid[m.toR][m.toC] = EMPTY;
-                grid[m.fromR][m.fromC] = sym;
+                int childThpn, childThdn;
+                int childPn = childPns[best], childDn = childDns[best];
+                if (or) {
+                    // 1 + epsilon thresholds cut down switching between close siblings
+                    childThpn = Math.min(thpn, secondVal == INF ? INF : secondVal + secondVal / 4 + 1);
+                    childThdn = (int) Math.min(INF, (long) thdn - dn + childDn);
+                } else {
+                    childThdn = Math.min(thdn, secondVal == INF ? INF : secondVal + secondVal / 4 + 1);
+                    childThpn = (int) Math.min(INF, (long) thpn - pn + childPn);
+                }
+                int m = moves[best];
+                apply(m, toMove);
+                try {
+                    mid(next, ply + 1, childThpn, childThdn);
+                } finally {
+                    undo(m, toMove);
+                }
+                childPns[best] = pn;
+                childDns[best] = dn;
             }
+            if (!aborted)
+                store(key, pn, dn);
         }
 
-        private char winnerOnGrid(char[][] grid, int connectTarget) {
-            int n = connectTarget;
-            int[][] dirs = new int[][] { { 1, 0 }, { 0, 1 }, { 1, 1 }, { 1, -1 } };
-            for (int r = 0; r < 8; r++)
-                for (int c = 0; c < 8; c++) {
-                    char s = grid[r][c];
-                    if (s == EMPTY)
-                        continue;
-                    for (int[] d : dirs) {
-                        int dc = d[0], dr = d[1];
-                        int count = 1;
-                        int nc = c + dc, nr = r + dr;
-                        while (nc >= 0 && nc < 8 && nr >= 0 && nr < 8 && grid[nr][nc] == s) {
-                            count++;
-                            if (count >= n)
-                                return s;
-                            nc += dc;
-                            nr += dr;
-                        }
-                    }
+        /** Command-line analysis of a saved game: who can force a win from it. */
+        static void run(String[] args) throws Exception {
+            if (args.length < 2) {
+                System.out.println("Usage: --solve <savefile> [nodeLimit] [tableMB]");
+                return;
+            }
+            long nodeLimit = (args.length > 2) ? Long.parseLong(args[2]) : 5_000_000;
+            int tableMB = (args.length > 3) ? Integer.parseInt(args[3]) : 64;
+
+            Game game = FileManager.loadGame(new File(args[1]));
+            BitBoard bb = BitBoard.from(game);
+            int[] movesMade = new int[game.players.length];
+            for (int p = 0; p < movesMade.length; p++)
+                movesMade[p] = game.players[p].movesMade;
+            int toMove = game.currentPlayerIndex;
+            ProofSolver solver = new ProofSolver(bb, movesMade, game.maxMoves, nodeLimit, tableMB);
+
+            System.out.println(game.gamePhase + ", " + game.players.length + " players, "
+                    + game.players[toMove].name + " to move");
+            if (game.isGameOver()) {
+                System.out.println("The game is already over.");
+                return;
+            }
+            boolean anyUnknown = false;
+            int winner = -1;
+            for (int p = 0; p < game.players.length; p++) {
+                long t0 = System.currentTimeMillis();
+                int result = solver.solve(p, toMove);
+                String line = game.players[p].name + " (" + colorName(game.players[p].symbol) + "): "
+                        + (result == PROVEN ? "forced win" : result == DISPROVEN ? "no forced win" : "unknown")
+                        + "  [" + solver.nodes() + " nodes, " + (System.currentTimeMillis() - t0) + " ms]";
+                if (result == PROVEN && p == toMove) {
+                    AIPlayer.Move m = AIPlayer.Move.of(solver.winningMove());
+                    line += "  winning move " + (m.placement ? Board.posToLabel(m.toC, m.toR)
+                            : Board.posToLabel(m.fromC, m.fromR) + "-" + Board.posToLabel(m.toC, m.toR));
                 }
-            return 0;
+                System.out.println(line);
+                anyUnknown |= result == UNKNOWN;
+                if (result == PROVEN)
+                    winner = p;
+            }
+            String verdict = (winner == toMove) ? "WIN for the side to move"
+                    : (winner >= 0) ? "LOSS for the side to move"
+                            : anyUnknown ? "UNKNOWN (node limit reached)" : "DRAW with best play";
+            System.out.println("Result: " + verdict);
         }
     }
 
     // =========================
-    // Board
+    // TimeManager
     // =========================
     /**
-     * Represents the 8x8 game board grid.
-     * Handles placement and movement validation logic.
+     * Thinking-time budget for one SMART move. The GamePanel gives an AI turn 10
+     * seconds (less the 400 ms display delay), so the search never runs past
+     * HARD_LIMIT_MS. Within that, a target time is set by game phase and by how
+     * many moves the AI has left, and iterative deepening stops early when the best
+     * move has been stable for a few iterations or the result is a forced win or
+     * loss. It gets more time when the score suddenly drops.
      */
-    static class Board {
-        char[][] grid = new char[8][8];
+    static class TimeManager {
+        static final long HARD_LIMIT_MS = 9000;
+        static final int POLL_MASK = 4095; // the search reads the clock every 4096 nodes
+        private static final int STABLE_ITERATIONS = 3;
+        private static final int SCORE_DROP = 20_000; // about a new closed four or open three against us
+        private static final int DECIDED = 900_000_000; // scores beyond this are forced wins or losses
+
+        private final long start = System.currentTimeMillis();
+        private final long target; // ms, 0 = no early stop
+        private final long limit;
+        private volatile long deadline;
+        private int lastBest;
+        private int lastScore;
+        private boolean hasScore;
+        private int stable;
+        private boolean extended;
+
+        private TimeManager(long target, long limit) {
+            this.target = target;
+            this.limit = limit;
+            this.deadline = start + Math.min(limit, target > 0 ? 2 * target : limit);
+        }
 
         /**
-         * Initializes the board grid by filling all cells with the EMPTY symbol.
+         * Budget for an AI move: about 4.5 s in the placement phase, which decides
+         * most games, and 2.5 s rising to 4.5 s in the movement phase as the
+         * player's remaining moves run out.
          */
-        public void initializeBoard() {
-            for (char[] row : grid)
-                java.util.Arrays.fill(row, EMPTY);
+        static TimeManager forMove(Game game, Player me, boolean placement) {
+            long target;
+            if (placement) {
+                target = HARD_LIMIT_MS / 2;
+            } else {
+                int left = Math.max(0, game.maxMoves - me.movesMade);
+                target = 2500 + 2000L * (game.maxMoves - Math.min(left, game.maxMoves)) / Math.max(1, game.maxMoves);
+            }
+            return new TimeManager(target, HARD_LIMIT_MS);
+        }
+
+        /** Fixed budget: searches until the limit or the depth cap, never stopping early. */
+        static TimeManager fixed(long limitMs) {
+            return new TimeManager(0, limitMs);
+        }
+
+        /** Polled by the search; true once the search has to stop. */
+        boolean outOfTime() {
+            return System.currentTimeMillis() >= deadline;
+        }
+
+        long elapsed() {
+            return System.currentTimeMillis() - start;
         }
 
         /**
-         * Places a piece on the board at the specified position.
-         * 
-         * @param pos    Array containing [column, row]
-         * @param symbol The player's symbol
-         * @return true if placement was successful, false if invalid
+         * For searches without iterations (MCTS): true once the target is spent,
+         * or with a fixed budget once the limit is.
          */
-        public boolean placePiece(int[] pos, char symbol) {
-            int c = pos[0], r = pos[1];
-            if (c < 0 || c >= 8 || r < 0 || r >= 8)
-                return false;
-            if (grid[r][c] != EMPTY)
-                return false;
-            grid[r][c] = symbol;
-            return true;
+        boolean reachedTarget() {
+            return target > 0 ? elapsed() >= target : outOfTime();
         }
 
         /**
-         * Moves a piece from one position to an adjacent position.
-         * Only allows moves of 1 square in any direction (including diagonals).
+         * Called after each completed iteration.
          * 
-         * @param from   Array containing source [column, row]
-         * @param to     Array containing destination [column, row]
-         * @param symbol The player's symbol
-         * @return true if move was successful, false if invalid
+         * @param bestMove Best move of the iteration
+         * @param score    Its score
+         * @return true if another, deeper iteration should be started
          */
-        public boolean movePiece(int[] from, int[] to, char symbol) {
-            int fc = from[0], fr = from[1], tc = to[0], tr = to[1];
-            if (fc < 0 || fc >= 8 || fr < 0 || fr >= 8)
-                return false;
-            if (tc < 0 || tc >= 8 || tr < 0 || tr >= 8)
-                return false;
-            if (grid[fr][fc] != symbol)
-                return false;
-            if (grid[tr][tc] != EMPTY)
+        boolean continueAfter(int bestMove, int score) {
+            boolean dropped = hasScore && score < lastScore - SCORE_DROP;
+            stable = (hasScore && bestMove == lastBest) ? stable + 1 : 0;
+            lastBest = bestMove;
+            lastScore = score;
+            hasScore = true;
+            if (outOfTime())
                 return false;
-
-            int dc = Math.abs(tc - fc);
-            int dr = Math.abs(tr - fr);
-            if (dc > 1 || dr > 1 || (dc == 0 && dr == 0))
+            if (target == 0)
+                return true;
+            if (Math.abs(score) >= DECIDED)
                 return false;
 
-            grid[fr][fc] = EMPTY;
-            grid[tr][tc] = symbol;
-            return true;
-        }
-
-        /**
-         * Converts board coordinates to chess-style notation (e.g., "A1", "H8").
-         * 
-         * @param c Column index (0-7)
-         * @param r Row index (0-7)
-         * @return String representation (e.g., "A1")
-         */
-        public static String posToLabel(int c, int r) {
-            return "" + (char) ('A' + c) + (r + 1);
+            if (dropped && !extended) {
+                // Trouble: allow the full turn to find a way out
+                extended = true;
+                deadline = start + limit;
+            }
+            long budget = extended ? Math.min(limit, 2 * target)
+                    : (stable >= STABLE_ITERATIONS) ? target / 2 : target;
+            // The next iteration takes several times longer than this one, so only
+            // start it while at most half the budget is spent
+            return elapsed() * 2 < budget;
         }
     }
 
@@ -1231,6 +4527,11 @@ public class Connect5GUI {
 
         private int[] selectedFrom = null;
 
+        // Target square of the last move; -1 until a move is made (e.g. after loading)
+        private int lastMoveC = -1, lastMoveR = -1;
+        // Cache of checkWinner(); unsynchronized, so checkWinner/isGameOver stay on one thread (the EDT)
+        private boolean winnerChecked = false;
+
         // draw only for 2-human mode
         private boolean draw = false;
         private Integer drawOfferFrom = null;
@@ -1320,21 +4621,33 @@ public class Connect5GUI {
             }
         }
 
+        /**
+         * Records the target square of a move just applied to the board, so the
+         * next winner check only has to look at the lines through it.
+         * 
+         * @param c Column index of the target square
+         * @param r Row index of the target square
+         */
+        void markLastMove(int c, int r) {
+            lastMoveC = c;
+            lastMoveR = r;
+            winnerChecked = false;
+        }
+
         /**
          * Checks if there is a winner and updates the winner field.
+         * Only the lines through the last move are examined; the full board is
+         * scanned once when no last move is known (a freshly loaded game).
          */
         public void checkWinner() {
-            char w = findWinnerSymbol();
-            if (w == 0)
-                winner = null;
-            else {
-                for (Player p : players)
-                    if (p.symbol == w) {
-                        winner = p;
-                        return;
-                    }
-                winner = null;
-            }
+            if (winnerChecked)
+                return;
+            winnerChecked = true;
+
+            char w = (lastMoveC >= 0) ? winnerThroughLastMove() : findWinnerSymbol();
+            assert winner != null || w == findWinnerSymbol() : "incremental win check disagrees with full scan";
+            if (w != 0)
+                winner = getPlayerBySymbol(w);
         }
 
         public boolean isGameOver() {
@@ -1388,6 +4701,7 @@ public class Connect5GUI {
                     gamePhase = "MOVEMENT";
 
                 moveHistory.add("P:" + c + "," + r); // Record
+                markLastMove(c, r);
                 logTurn(desc);
                 advanceTurn();
                 return desc;
@@ -1417,6 +4731,7 @@ public class Connect5GUI {
                     selectedFrom = null;
 
                     moveHistory.add("M:" + fromC + "," + fromR + ":" + c + "," + r); // Record
+                    markLastMove(c, r);
                     logTurn(desc);
                     advanceTurn();
                     return desc;
@@ -1439,7 +4754,18 @@ public class Connect5GUI {
                 drawOfferFrom = null;
 
             AIPlayer ai = (AIPlayer) currentPlayer();
-            AIPlayer.Move m = ai.pickMove(this);
+            return performAITurn(ai, ai.pickMove(this));
+        }
+
+        /**
+         * Plays a move an AI player has picked, recording it in the move history
+         * the way performAITurn() does (the learning memory replays it from there).
+         * 
+         * @param ai The AI player on move
+         * @param m  Its move, or null if it has none
+         * @return String describing the AI's move
+         */
+        String performAITurn(AIPlayer ai, AIPlayer.Move m) {
             if (m == null)
                 return "AI has no valid moves.";
 
@@ -1457,6 +4783,7 @@ public class Connect5GUI {
                     this.gamePhase = "MOVEMENT";
 
                 moveHistory.add(m.toHistoryString()); // Record
+                markLastMove(m.toC, m.toR);
                 logTurn(desc);
                 advanceTurn();
                 return desc;
@@ -1470,6 +4797,7 @@ public class Connect5GUI {
                         + Board.posToLabel(m.toC, m.toR);
 
                 moveHistory.add(m.toHistoryString()); // Record
+                markLastMove(m.toC, m.toR);
                 logTurn(desc);
                 advanceTurn();
                 return desc;
@@ -1482,9 +4810,9 @@ public class Connect5GUI {
                 logResult("RESULT: " + winner.name + " wins by connecting " + connectTarget + "!");
 
                 // If AI lost, learn!
-                for (Player p : players) {
-                    if (p instanceof AIPlayer && p != winner) {
-                        AIPlayer.saveLosingGame(moveHistory);
+                for (int i = 0; i < players.length; i++) {
+                    if (players[i] instanceof AIPlayer && players[i] != winner) {
+                        AIPlayer.saveLosingGame(this, i);
                     }
                 }
                 return;
@@ -1514,8 +4842,37 @@ public class Connect5GUI {
             logger.closeFile();
         }
 
+        /**
+         * Counts the run through the last move's target square in each of the
+         * four directions.
+         * 
+         * @return The symbol of the piece on that square if it completes a line, or 0
+         */
+        private char winnerThroughLastMove() {
+            char s = board.grid[lastMoveR][lastMoveC];
+            if (s == EMPTY)
+                return 0;
+            int[][] dirs = new int[][] { { 1, 0 }, { 0, 1 }, { 1, 1 }, { 1, -1 } };
+            for (int[] d : dirs) {
+                int count = 1;
+                for (int sign = -1; sign <= 1; sign += 2) {
+                    int nc = lastMoveC + sign * d[0], nr = lastMoveR + sign * d[1];
+                    while (nc >= 0 && nc < 8 && nr >= 0 && nr < 8 && board.grid[nr][nc] == s) {
+                        count++;
+                        nc += sign * d[0];
+                        nr += sign * d[1];
+                    }
+                }
+                if (count >= connectTarget)
+                    return s;
+            }
+            return 0;
+        }
+
         /**
          * Finds the winner symbol by checking all possible connections.
+         * Used for positions without a known last move, and by the debug assertion
+         * in checkWinner().
          * 
          * @return The winning player's symbol, or 0 if no winner
          */
@@ -1547,6 +4904,371 @@ public class Connect5GUI {
         }
     }
 
+    // =========================
+    // AIBenchmark
+    // =========================
+    /**
+     * Headless benchmark for the SMART search, run with
+     * {@code java FinalProject.Connect5GUI --bench [depth] [threads] [moveCap] [options]}.
+     * Searches a few fixed positions to a fixed depth and reports nodes, speed
+     * and heap bytes allocated per node (via the HotSpot thread allocation counter).
+     * Options: {@code nolmr}, {@code nonull} and {@code noqs} switch off late-move
+     * reductions, null-move pruning and the quiescence search; {@code time=<ms>} searches each position for that long
+     * instead and reports the depth reached, {@code time=auto} with the budget
+     * the TimeManager gives a real move. {@code paranoid}, {@code brs} and
+     * {@code maxn} force a multi-player search mode; fixed-depth max-n runs also
+     * repeat each search without shallow pruning and compare the root. {@code mcts} benchmarks the Monte Carlo
+     * engine instead (1 s per position unless timed) and reports playouts per
+     * second; {@code playouts=<n>} caps its playouts. {@code eval} times the
+     * full-rescan evaluators on random positions instead and checks the vector
+     * backend against the scalar one and the incremental totals. {@code nnue}
+     * compares leaf evaluations per second of the window heuristic and the
+     * neural evaluator (the -Dconnect5.nnue file, or random weights without one).
+     */
+    static class AIBenchmark {
+        // Rows listed from row 0 (label 1) up; '.' empty, B/W/U/G pieces
+        private static final long MCTS_DEFAULT_MS = 1000;
+        private static final int EVAL_POSITIONS = 4096;
+        private static final int EVAL_ROUNDS = 200;
+        private static final String[][] POSITIONS = {
+                { "........", "........", "........", "...B....", "....W...", "........", "........", "........" },
+                { "........", "..W.....", "...BB...", "..WBW...", "...W.B..", "........", "........", "........" },
+                { "B.W.....", ".BW.....", "..BW.W..", "..WB.B..", "...BW...", "..B..W..", ".B....W.", "........" },
+                { "........", "..U.....", "...BW...", "..WBU...", "...UB...", "....W...", "........", "........" },
+                { "........", "..G.....", "..UBW...", "..WBU...", "...GB.G.", "....W...", "...U....", "........" },
+        };
+
+        private static int threads = 1;
+        private static int cap = 0;
+        private static boolean lmr = true;
+        private static boolean nullMove = true;
+        private static boolean quiescence = true;
+        private static boolean monteCarlo = false;
+        private static int searchMode = 0; // 0 = by player count
+        private static long playoutLimit = 0;
+
+        static void run(String[] args) {
+            int depth = 4;
+            long timeMs = 0;
+            int positional = 0;
+            for (int i = 1; i < args.length; i++) {
+                if ("nolmr".equals(args[i]))
+                    lmr = false;
+                else if ("nonull".equals(args[i]))
+                    nullMove = false;
+                else if ("noqs".equals(args[i]))
+                    quiescence = false;
+                else if ("mcts".equals(args[i]))
+                    monteCarlo = true;
+                else if ("eval".equals(args[i])) {
+                    benchEvaluation();
+                    return;
+                } else if ("nnue".equals(args[i])) {
+                    benchNeural();
+                    return;
+                } else if ("paranoid".equals(args[i]))
+                    searchMode = AIPlayer.PARANOID;
+                else if ("brs".equals(args[i]))
+                    searchMode = AIPlayer.BEST_REPLY;
+                else if ("maxn".equals(args[i]))
+                    searchMode = AIPlayer.MAX_N;
+                else if (args[i].startsWith("playouts="))
+                    playoutLimit = Long.parseLong(args[i].substring(9));
+                else if ("time=auto".equals(args[i]))
+                    timeMs = -1;
+                else if (args[i].startsWith("time="))
+                    timeMs = Long.parseLong(args[i].substring(5));
+                else if (positional == 0 && ++positional > 0)
+                    depth = Integer.parseInt(args[i]);
+                else if (positional == 1 && ++positional > 0)
+                    threads = Integer.parseInt(args[i]);
+                else if (positional == 2 && ++positional > 0)
+                    cap = Integer.parseInt(args[i]);
+            }
+
+            System.out.println("Warming up...");
+            for (int i = 0; i < 3; i++)
+                for (String[] rows : POSITIONS) {
+                    if (monteCarlo)
+                        searchMonteCarlo(rows, 200, false);
+                    else
+                        search(rows, Math.min(depth, 3), 0, false);
+                }
+
+            if (monteCarlo) {
+                System.out.println("MCTS, " + threads + " thread(s), "
+                        + (timeMs > 0 ? timeMs + " ms" : timeMs < 0 ? "adaptive budget" : MCTS_DEFAULT_MS + " ms")
+                        + (playoutLimit > 0 ? " or " + playoutLimit + " playouts" : ""));
+                for (String[] rows : POSITIONS)
+                    searchMonteCarlo(rows, timeMs, true);
+                return;
+            }
+            String settings = threads + " thread(s), move cap " + (cap > 0 ? String.valueOf(cap) : "off")
+                    + ", LMR " + (lmr ? "on" : "off") + ", null move " + (nullMove ? "on" : "off")
+                    + ", quiescence " + (quiescence ? "on" : "off")
+                    + ", multi-player " + (searchMode == AIPlayer.PARANOID ? "paranoid"
+                            : searchMode == AIPlayer.BEST_REPLY ? "best-reply"
+                                    : searchMode == AIPlayer.MAX_N ? "max-n" : "auto");
+            if (timeMs != 0) {
+                System.out.println("Timed search, " + (timeMs > 0 ? timeMs + " ms" : "adaptive budget") + ", "
+                        + settings);
+                for (String[] rows : POSITIONS)
+                    search(rows, AIPlayer.MAX_PLY / 2, timeMs, true);
+            } else {
+                System.out.println("Fixed-depth search, depth " + depth + ", " + settings);
+                for (String[] rows : POSITIONS)
+                    search(rows, depth, 0, true);
+            }
+        }
+
+        private static void search(String[] rows, int depth, long timeMs, boolean report) {
+            Game game = gameFor(rows);
+            AIPlayer ai = (AIPlayer) game.currentPlayer();
+            ai.setSearchThreads(threads);
+            ai.setMoveCap(cap);
+            ai.setLateMoveReductions(lmr);
+            ai.setNullMovePruning(nullMove);
+            ai.setSearchMode(searchMode);
+            ai.setQuiescence(quiescence);
+            BitBoard bb = ai.positionOf(game);
+            int me = bb.indexOf(ai.symbol);
+            boolean placement = "PLACEMENT".equals(game.gamePhase);
+            int[] moves = new int[AIPlayer.MAX_MOVES];
+            int n = AIPlayer.generateMoves(bb, me, placement, moves);
+            int[] bias = new int[n];
+            ai.ensureSearchState(); // one-time table allocation is not part of the measurement
+
+            long bytesBefore = allocatedBytes();
+            long t0 = System.nanoTime();
+            int best = ai.pickIterativeDeepening(game, bb, me, moves, bias, n, depth,
+                    timeMs < 0 ? TimeManager.forMove(game, ai, placement)
+                            : TimeManager.fixed(timeMs > 0 ? timeMs : Long.MAX_VALUE / 4));
+            long micros = Math.max(1, (System.nanoTime() - t0) / 1000);
+            long bytes = allocatedBytes() - bytesBefore;
+
+            if (report) {
+                String label = label(best);
+                System.out.printf("%-9s %d players  best %-6s depth %2d  nodes %9d  re-search %2d  %6d ms"
+                        + "  %7.0f knodes/s  %s%n",
+                        game.gamePhase, game.players.length, label, ai.depthReached, ai.nodes, ai.aspirationFails,
+                        micros / 1000, ai.nodes * 1000.0 / micros,
+                        bytes < 0 ? "alloc n/a"
+                                : String.format("%.2f bytes/node", (double) bytes / Math.max(1, ai.nodes)));
+                System.out.printf("          LMR %d reduced / %d re-searched, null move %d tried / %d cut,"
+                        + " quiescence %d nodes%n",
+                        ai.lmrReductions, ai.lmrResearches, ai.nullTries, ai.nullCutoffs, ai.quiescenceNodes);
+                if (placement) {
+                    long t1 = System.nanoTime();
+                    int[] forced = ThreatSolver.findWin(bb, me, true);
+                    System.out.printf("          threat search: %s in %d us%n",
+                            forced == null ? "no forced win" : "win in " + forced.length + " plies",
+                            (System.nanoTime() - t1) / 1000);
+                }
+                if (searchMode == AIPlayer.MAX_N && timeMs == 0)
+                    checkMaxNPruning(rows, depth, best, ai.bestScore);
+            }
+        }
+
+        /**
+         * Repeats a fixed-depth max-n search without shallow pruning: sound pruning
+         * must leave the root's best move and value unchanged (up to ties).
+         */
+        private static void checkMaxNPruning(String[] rows, int depth, int prunedBest, int prunedValue) {
+            Game game = gameFor(rows);
+            AIPlayer ai = (AIPlayer) game.currentPlayer();
+            ai.setSearchThreads(threads);
+            ai.setMoveCap(cap);
+            ai.setSearchMode(AIPlayer.MAX_N);
+            ai.setMaxNPruning(false);
+            BitBoard bb = ai.positionOf(game);
+            int me = bb.indexOf(ai.symbol);
+            int[] moves = new int[AIPlayer.MAX_MOVES];
+            int n = AIPlayer.generateMoves(bb, me, "PLACEMENT".equals(game.gamePhase), moves);
+            int best = ai.pickIterativeDeepening(game, bb, me, moves, new int[n], n, depth,
+                    TimeManager.fixed(Long.MAX_VALUE / 4));
+            System.out.printf("          max-n unpruned: best %-6s value %d, pruned %s value %d: %s (%d nodes)%n",
+                    label(best), ai.bestScore, label(prunedBest), prunedValue,
+                    ai.bestScore == prunedValue ? "same" : "DIFFERENT", ai.nodes);
+        }
+
+        /** Board label of an encoded move, e.g. "D4" or "D4-E5". */
+        private static String label(int move) {
+            AIPlayer.Move m = AIPlayer.Move.of(move);
+            return m.placement ? Board.posToLabel(m.toC, m.toR)
+                    : Board.posToLabel(m.fromC, m.fromR) + "-" + Board.posToLabel(m.toC, m.toR);
+        }
+
+        /**
+         * Differential check and throughput of the FullEvaluator backends on
+         * random 2-4 player positions of every density.
+         */
+        private static void benchEvaluation() {
+            Random rng = new Random(1);
+            BitBoard[] boards = new BitBoard[EVAL_POSITIONS];
+            for (int i = 0; i < boards.length; i++) {
+                int players = 2 + i % 3;
+                boards[i] = new BitBoard(java.util.Arrays.copyOf(COLOR_ORDER, players));
+                int fill = rng.nextInt(65);
+                for (int sq = 0; sq < 64; sq++)
+                    if (rng.nextInt(64) < fill)
+                        boards[i].place(rng.nextInt(players), sq);
+            }
+
+            FullEvaluator vector = FullEvaluator.vector();
+            System.out.println("Evaluation, " + EVAL_POSITIONS + " random positions, 2-4 players");
+            if (vector == null)
+                System.out.println("vector backend unavailable (build vector/VectorEval.java"
+                        + " and run with --add-modules jdk.incubator.vector)");
+            FullEvaluator[] backends = vector == null ? new FullEvaluator[] { FullEvaluator.SCALAR }
+                    : new FullEvaluator[] { FullEvaluator.SCALAR, vector };
+            for (FullEvaluator backend : backends) {
+                int mismatches = 0;
+                int[] totals = new int[BitBoard.MAX_PLAYERS];
+                int[] scalar = new int[BitBoard.MAX_PLAYERS];
+                for (BitBoard bb : boards) {
+                    int n = bb.pieces.length;
+                    backend.evaluate(bb.pieces, bb.occupied, totals);
+                    FullEvaluator.SCALAR.evaluate(bb.pieces, bb.occupied, scalar);
+                    if (!java.util.Arrays.equals(totals, 0, n, bb.eval.totals, 0, n)
+                            || !java.util.Arrays.equals(totals, 0, n, scalar, 0, n))
+                        mismatches++;
+                }
+
+                long evals = 0, sink = 0;
+                for (int round = 0; round < EVAL_ROUNDS / 4; round++) // warm-up
+                    for (BitBoard bb : boards)
+                        backend.evaluate(bb.pieces, bb.occupied, totals);
+                long t0 = System.nanoTime();
+                for (int round = 0; round < EVAL_ROUNDS; round++)
+                    for (BitBoard bb : boards) {
+                        backend.evaluate(bb.pieces, bb.occupied, totals);
+                        sink += totals[0];
+                        evals += bb.pieces.length;
+                    }
+                long micros = Math.max(1, (System.nanoTime() - t0) / 1000);
+                System.out.printf("%-22s %8.0f k player-evals/s  %6d ms  mismatches %d%s%n", backend.name(),
+                        evals * 1000.0 / micros, micros / 1000, mismatches, sink == 42 ? " " : "");
+            }
+        }
+
+        /**
+         * Make, evaluate and unmake every placement on random positions, once
+         * with the window heuristic alone and once with a network accumulator
+         * attached and its upper layers run at each leaf.
+         */
+        private static void benchNeural() {
+            NeuralEval net = NeuralEval.shared();
+            String source = System.getProperty("connect5.nnue");
+            if (net == null) {
+                net = NeuralEval.random(1, 64, 32);
+                source = "random weights";
+            }
+            System.out.println("Leaf evaluation, " + EVAL_POSITIONS + " random positions, 2-4 players, network "
+                    + net.hidden1 + "x" + net.hidden2 + " (" + source + ")");
+
+            Random rng = new Random(1);
+            BitBoard[] boards = new BitBoard[EVAL_POSITIONS];
+            for (int i = 0; i < boards.length; i++) {
+                int players = 2 + i % 3;
+                boards[i] = new BitBoard(java.util.Arrays.copyOf(COLOR_ORDER, players));
+                int fill = rng.nextInt(33);
+                for (int sq = 0; sq < 64; sq++)
+                    if (rng.nextInt(64) < fill)
+                        boards[i].place(rng.nextInt(players), sq);
+            }
+
+            for (boolean neural : new boolean[] { false, true }) {
+                for (BitBoard bb : boards)
+                    bb.nnue = neural ? net.accumulate(bb) : null;
+                long evals = 0, sink = 0, t0 = 0;
+                for (int round = -EVAL_ROUNDS / 40; round < EVAL_ROUNDS / 10; round++) {
+                    if (round == 0)
+                        t0 = System.nanoTime(); // the negative rounds are warm-up
+                    for (BitBoard bb : boards)
+                        for (long empty = ~bb.occupied; empty != 0; empty &= empty - 1) {
+                            int sq = Long.numberOfTrailingZeros(empty);
+                            bb.place(0, sq);
+                            if (bb.nnue != null)
+                                bb.nnue.update(0, sq, 1);
+                            int[] totals = bb.nnue != null ? bb.nnue.evaluate() : bb.eval.totals;
+                            sink += totals[0] - totals[1];
+                            bb.remove(0, sq);
+                            if (bb.nnue != null)
+                                bb.nnue.update(0, sq, -1);
+                            if (round >= 0)
+                                evals++;
+                        }
+                }
+                long micros = Math.max(1, (System.nanoTime() - t0) / 1000);
+                int mismatches = 0;
+                for (BitBoard bb : boards)
+                    if (neural && !bb.nnue.matchesRefresh(bb))
+                        mismatches++;
+                System.out.printf("%-16s %8.0f k evals/s  %6d ms%s%s%n", neural ? "neural" : "window heuristic",
+                        evals * 1000.0 / micros, micros / 1000,
+                        neural ? "  accumulator mismatches " + mismatches : "", sink == 42 ? " " : "");
+            }
+        }
+
+        private static void searchMonteCarlo(String[] rows, long timeMs, boolean report) {
+            Game game = gameFor(rows);
+            AIPlayer ai = (AIPlayer) game.currentPlayer();
+            ai.setSearchThreads(threads);
+            ai.setPlayoutLimit(report ? playoutLimit : 0);
+            BitBoard bb = BitBoard.from(game);
+            boolean placement = "PLACEMENT".equals(game.gamePhase);
+            int[] moves = new int[AIPlayer.MAX_MOVES];
+            AIPlayer.generateMoves(bb, bb.indexOf(ai.symbol), placement, moves);
+
+            long t0 = System.nanoTime();
+            int best = ai.pickMonteCarlo(game, bb, moves, timeMs < 0 ? TimeManager.forMove(game, ai, placement)
+                    : TimeManager.fixed(timeMs > 0 ? timeMs : MCTS_DEFAULT_MS));
+            long millis = (System.nanoTime() - t0) / 1_000_000;
+
+            if (report) {
+                AIPlayer.Move m = AIPlayer.Move.of(best);
+                String label = m.placement ? Board.posToLabel(m.toC, m.toR)
+                        : Board.posToLabel(m.fromC, m.fromR) + "-" + Board.posToLabel(m.toC, m.toR);
+                System.out.printf("%-9s %d players  best %-6s playouts %8d  %6d ms  %8d playouts/s%n",
+                        game.gamePhase, game.players.length, label, ai.playouts, millis, ai.playoutsPerSecond);
+            }
+        }
+
+        /** Builds a game whose first AI player is to move on the given rows. */
+        private static Game gameFor(String[] rows) {
+            ArrayList<Character> syms = new ArrayList<>();
+            for (char s : COLOR_ORDER)
+                for (String row : rows)
+                    if (row.indexOf(s) >= 0 && !syms.contains(s))
+                        syms.add(s);
+
+            Player[] players = new Player[syms.size()];
+            for (int i = 0; i < players.length; i++)
+                players[i] = new AIPlayer("AI " + (i + 1), syms.get(i), "SMART");
+
+            Game game = new Game(5, 8, null, players, 0);
+            boolean allPlaced = true;
+            for (Player p : players) {
+                for (int r = 0; r < 8; r++)
+                    for (int c = 0; c < 8; c++)
+                        if (rows[r].charAt(c) == p.symbol) {
+                            game.board.grid[r][c] = p.symbol;
+                            p.piecesPlaced++;
+                        }
+                allPlaced &= p.piecesPlaced >= game.PLACEMENT_LIMIT;
+            }
+            game.gamePhase = allPlaced ? "MOVEMENT" : "PLACEMENT";
+            return game;
+        }
+
+        private static long allocatedBytes() {
+            java.lang.management.ThreadMXBean mx = java.lang.management.ManagementFactory.getThreadMXBean();
+            if (mx instanceof com.sun.management.ThreadMXBean)
+                return ((com.sun.management.ThreadMXBean) mx).getThreadAllocatedBytes(Thread.currentThread().getId());
+            return -1;
+        }
+    }
+
     // =========================
     // GUI
     // =========================
@@ -1588,6 +5310,20 @@ public class Connect5GUI {
 
             cards.show(root, "MENU");
 
+            // Closing the window (or Quit) aborts a running AI search
+            addWindowListener(new java.awt.event.WindowAdapter() {
+                @Override
+                public void windowClosing(java.awt.event.WindowEvent e) {
+                    gamePanel.cancelAI();
+                }
+
+                @Override
+                public void windowClosed(java.awt.event.WindowEvent e) {
+                    gamePanel.cancelAI();
+                    gamePanel.aiExecutor.shutdownNow();
+                }
+            });
+
             // Provide a sensible starting size, but still allow resizing
             pack();
             setSize(new Dimension(980, 740));
@@ -1898,7 +5634,8 @@ public class Connect5GUI {
 
             private final JTextField l1p1 = new JTextField(22), l1p2 = new JTextField(22);
             private final JTextField l2human = new JTextField(22);
-            private final JComboBox<String> l2diff = new JComboBox<>(new String[] { "BEGINNER", "MEDIUM", "SMART" });
+            private final JComboBox<String> l2diff = new JComboBox<>(
+                    new String[] { "BEGINNER", "MEDIUM", "SMART", "MCTS" });
 
             private final JRadioButton mpHumansOnlyBtn = new JRadioButton("Multiplayer 3-4 players)", true);
             private final JRadioButton mpVsAIBtn = new JRadioButton("Players versus AI (3-4 players vs AI)");
@@ -1910,7 +5647,8 @@ public class Connect5GUI {
             private final JComboBox<Integer> vsHumanCount = new JComboBox<>(new Integer[] { 3, 4 });
             private final JTextField vsN1 = new JTextField(22), vsN2 = new JTextField(22), vsN3 = new JTextField(22),
                     vsN4 = new JTextField(22);
-            private final JComboBox<String> vsDiff = new JComboBox<>(new String[] { "BEGINNER", "MEDIUM", "SMART" });
+            private final JComboBox<String> vsDiff = new JComboBox<>(
+                    new String[] { "BEGINNER", "MEDIUM", "SMART", "MCTS" });
 
             private final JButton startBtn = new JButton("Start Game");
             private final JButton loadBtn = new JButton("Load Game");
@@ -2682,6 +6420,35 @@ public class Connect5GUI {
             private Timer turnLimitTimer;
             private int secondsLeft = 10;
 
+            // AI moves are computed here one at a time; the daemon thread never keeps the app alive.
+            // One waiting slot: a newer request replaces a waiting (already cancelled) one.
+            private final java.util.concurrent.ExecutorService aiExecutor = new java.util.concurrent.ThreadPoolExecutor(
+                    1, 1, 0L, java.util.concurrent.TimeUnit.MILLISECONDS,
+                    new java.util.concurrent.ArrayBlockingQueue<>(1), r -> {
+                        Thread t = new Thread(r, "AI move");
+                        t.setDaemon(true);
+                        return t;
+                    }, new java.util.concurrent.ThreadPoolExecutor.DiscardOldestPolicy());
+            private AIMoveTask aiTask; // move being computed, if any (EDT only)
+
+            /**
+             * Handle on an AI move computed on the executor. Cancelling it stops the
+             * search within a few milliseconds; its result is then never applied.
+             */
+            private final class AIMoveTask {
+                final AIPlayer ai;
+                java.util.concurrent.Future<?> future;
+
+                AIMoveTask(AIPlayer ai) {
+                    this.ai = ai;
+                }
+
+                void cancel() {
+                    ai.cancelSearch();
+                    future.cancel(true); // also interrupts the display delay
+                }
+            }
+
             private final JButton drawBtn = new JButton("Offer / Accept Draw");
             private final JButton saveBtn = new JButton("Save Game");
             private final JButton loadBtn = new JButton("Load Game");
@@ -2813,6 +6580,7 @@ public class Connect5GUI {
                                 JOptionPane.YES_NO_OPTION);
                         if (ok != JOptionPane.YES_OPTION)
                             return;
+                        cancelAI();
                     }
                     cards.show(root, "MENU");
                 });
@@ -2910,6 +6678,7 @@ public class Connect5GUI {
              * @param piecesPerPlayer Maximum pieces/moves per player
              */
             void startNewGame(Player[] players, int firstIndex, String modeName, int piecesPerPlayer) {
+                cancelAI();
                 new File("logs").mkdirs();
 
                 String ts = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
@@ -2950,6 +6719,7 @@ public class Connect5GUI {
              * @param modeName Name/description of the game mode
              */
             void resumeGame(Game game, String modeName) {
+                cancelAI();
                 this.game = game;
                 titleLabel.setText(modeName);
                 statusLabel.setText("Game resumed. Log: " + game.logger.fileName);
@@ -3089,29 +6859,63 @@ public class Connect5GUI {
                 triggerAIIfNeeded();
             }
 
+            /**
+             * Aborts the AI move being computed and any pondering, so an abandoned
+             * game leaves no search running and its AI players can be collected.
+             */
+            void cancelAI() {
+                if (aiTask != null) {
+                    aiTask.cancel();
+                    aiTask = null;
+                }
+                stopPondering();
+            }
+
+            /** Stops any AI of the current game that is thinking on the human's time. */
+            private void stopPondering() {
+                if (game == null)
+                    return;
+                for (Player p : game.players)
+                    if (p instanceof AIPlayer)
+                        ((AIPlayer) p).stopPondering();
+            }
+
             private void triggerAIIfNeeded() {
                 if (game == null || game.isGameOver()) {
                     turnLimitTimer.stop();
+                    stopPondering();
                     return;
                 }
-                if (!(game.currentPlayer() instanceof AIPlayer))
+                if (!(game.currentPlayer() instanceof AIPlayer)) {
+                    // Let the AI that moves next think on the human's time
+                    for (int i = 1; i < game.players.length; i++) {
+                        Player next = game.players[(game.currentPlayerIndex + i) % game.players.length];
+                        if (next instanceof AIPlayer) {
+                            ((AIPlayer) next).startPondering(game);
+                            break;
+                        }
+                    }
                     return;
+                }
 
                 disableBoard();
 
-                // Run AI in background thread to keep Timer animating
-                new Thread(() -> {
+                // Run AI on the executor to keep Timer animating; cancelAI() aborts it
+                AIPlayer ai = (AIPlayer) game.currentPlayer();
+                ai.allowSearch();
+                AIMoveTask task = new AIMoveTask(ai);
+                aiTask = task;
+                // The worker reads this, never the EDT-owned field, and leaves the over-check to the EDT
+                Game current = game;
+                task.future = submitAI(() -> {
                     // Small delay to let user see board update
                     try {
                         Thread.sleep(400);
-                    } catch (InterruptedException ignored) {
+                    } catch (InterruptedException e) {
+                        return; // cancelled
                     }
 
-                    // Double check state
-                    if (game == null || game.isGameOver())
-                        return;
-
-                    // Compute move (taking up to 9.5s)
+                    // Compute move (taking up to TimeManager.HARD_LIMIT_MS)
                     // We must be careful not to touch Swing components here,
                     // but game.performAITurn() updates game model which IS valid if we own the
                     // lock?
@@ -3124,37 +6928,20 @@ public class Connect5GUI {
                     // 'performAITurn' does both.
                     // Given 'pickMove' is 99% of time, let's call pickMove here (need cast).
 
-                    AIPlayer ai = (AIPlayer) game.currentPlayer();
-                    AIPlayer.Move bestCheck = ai.pickMove(game);
+                    AIPlayer.Move bestCheck = ai.pickMove(current);
 
                     // Now apply on EDT
                     SwingUtilities.invokeLater(() -> {
-                        if (game == null || game.isGameOver())
+                        if (aiTask != task)
+                            return; // cancelled
+                        aiTask = null;
+                        if (game != current || game.isGameOver())
                             return;
                         // verify it's still AI turn (should be)
                         if (game.currentPlayer() != ai)
                             return;
 
-                        String desc;
-                        if (bestCheck == null) {
-                            desc = "AI has no valid moves.";
-                        } else {
-                            if ("PLACEMENT".equals(game.gamePhase)) {
-                                game.board.placePiece(new int[] { bestCheck.toC, bestCheck.toR }, ai.symbol);
-                                ai.piecesPlaced++;
-                                desc = ai.name + " (AI) PLACE " + Board.posToLabel(bestCheck.toC, bestCheck.toR);
-                                if (game.allPlayersPlaced())
-                                    game.gamePhase = "MOVEMENT";
-                            } else {
-                                game.board.movePiece(new int[] { bestCheck.fromC, bestCheck.fromR },
-                                        new int[] { bestCheck.toC, bestCheck.toR }, ai.symbol);
-                                ai.movesMade++;
-                                desc = ai.name + " (AI) MOVE " + Board.posToLabel(bestCheck.fromC, bestCheck.fromR)
-                                        + " -> " + Board.posToLabel(bestCheck.toC, bestCheck.toR);
-                            }
-                            game.logTurn(desc);
-                            game.advanceTurn();
-                        }
+                        String desc = game.performAITurn(ai, bestCheck);
 
                         statusLabel.setText(desc);
                         resetTurnTimer(); // Reset for next player
@@ -3170,7 +6957,17 @@ public class Connect5GUI {
                         // Chain reaction if next is also AI?
                         triggerAIIfNeeded();
                     });
-                }).start();
+                });
+            }
+
+            /** Queues an AI move; null (and no task) once the executor is shut down. */
+            private java.util.concurrent.Future<?> submitAI(Runnable move) {
+                try {
+                    return aiExecutor.submit(move);
+                } catch (java.util.concurrent.RejectedExecutionException e) {
+                    aiTask = null; // the window is closing
+                    return null;
+                }
             }
 
             private void checkGameOverPopup() {
@@ -3297,6 +7094,26 @@ public class Connect5GUI {
     }
 
     public static void main(String[] args) {
+        if (args.length > 0 && "--bench".equals(args[0])) {
+            AIBenchmark.run(args);
+            return;
+        }
+        if (args.length > 0 && "--solve".equals(args[0])) {
+            try {
+                ProofSolver.run(args);
+            } catch (Exception e) {
+                System.err.println("Solve failed: " + e.getMessage());
+            }
+            return;
+        }
+        if (args.length > 0 && "--build-book".equals(args[0])) {
+            try {
+                OpeningBook.build(args);
+            } catch (IOException e) {
+                System.err.println("Book build failed: " + e.getMessage());
+            }
+            return;
+        }
         SwingUtilities.invokeLater(() -> {
             ConnectFrame f = new ConnectFrame();
             f.setVisible(true);
@@ -0,0 +1,101 @@
+package FinalProject;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * FullEvaluator backend built on the incubating Java Vector API, used by the
+ * -ea full-scan checks and the evaluation benchmark (the search itself reads
+ * WindowEval's incremental totals). Each vector lane holds one of the 96
+ * windows: the 7-bit extended pattern of a board (window cells plus both
+ * flanking squares) is gathered with one lane-wise shift and mask per pattern
+ * bit, the mine/filled patterns are combined into PatternTable indices, and the
+ * scores are fetched with a vector gather and summed.
+ *
+ * Kept out of the top-level sources because it needs the jdk.incubator.vector
+ * module, so {@code javac *.java} still builds the game. Build it alongside with
+ * {@code javac --add-modules jdk.incubator.vector -d out Connect5GUI.java vector/VectorEval.java}
+ * and run with {@code java --add-modules jdk.incubator.vector -cp out ...}.
+ * Connect5GUI only reaches this class reflectively (FullEvaluator.preferred()),
+ * so without it the game runs on the scalar evaluator.
+ */
+final class VectorEval extends Connect5GUI.FullEvaluator {
+    private static final VectorSpecies<Long> LONGS = LongVector.SPECIES_PREFERRED;
+    // Same lane count as LONGS, so a chunk of window indices narrows to ints in place
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED
+            .withShape(VectorShape.forBitSize(LONGS.vectorBitSize() / 2));
+    private static final int PATTERN = Connect5GUI.BitBoard.CONNECT + 2;
+    private static final int WINDOWS = Connect5GUI.BitBoard.WINDOWS;
+
+    // SQUARE[k][w]: square k of window w's pattern; KEEP[k][w]: 1, or 0 where it is off the board.
+    // (Variable shifts rather than rotates: JDK 17 only compiles the former to vector instructions.)
+    private static final long[][] SQUARE = new long[PATTERN][WINDOWS];
+    private static final long[][] KEEP = new long[PATTERN][WINDOWS];
+    private static final long[] FLANKS = new long[WINDOWS];
+
+    // Scratch buffers per thread: under -ea every search thread evaluates through this one instance
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    private static final class Scratch {
+        final int[] index = new int[LONGS.length()];
+        final long[] filled = new long[WINDOWS]; // shared by all players, already shifted into the index
+    }
+
+    static {
+        for (int w = 0; w < WINDOWS; w++) {
+            long mask = Connect5GUI.BitBoard.WINDOW_MASK[w];
+            int[] squares = new int[PATTERN];
+            squares[0] = Connect5GUI.BitBoard.WINDOW_BEFORE[w];
+            for (int k = 1; k < PATTERN - 1; k++, mask &= mask - 1)
+                squares[k] = Long.numberOfTrailingZeros(mask);
+            squares[PATTERN - 1] = Connect5GUI.BitBoard.WINDOW_AFTER[w];
+            for (int k = 0; k < PATTERN; k++) {
+                SQUARE[k][w] = Math.max(0, squares[k]);
+                KEEP[k][w] = squares[k] < 0 ? 0 : 1;
+            }
+            FLANKS[w] = Connect5GUI.BitBoard.OFF_BOARD_FLANKS[w];
+        }
+        if (WINDOWS % LONGS.length() != 0)
+            throw new IllegalStateException("vector length " + LONGS.length() + " does not divide " + WINDOWS);
+    }
+
+    @Override
+    String name() {
+        return "vector " + LONGS.vectorBitSize() + "-bit x" + LONGS.length();
+    }
+
+    @Override
+    void evaluate(long[] pieces, long occupied, int[] totals) {
+        int[] table = Connect5GUI.PatternTable.SCORES;
+        int center = Connect5GUI.PatternTable.centerBonus();
+        Scratch buffers = scratch.get();
+        int[] index = buffers.index;
+        long[] filled = buffers.filled;
+        for (int w = 0; w < WINDOWS; w += LONGS.length())
+            pattern(occupied, w).or(LongVector.fromArray(LONGS, FLANKS, w)).lanewise(VectorOperators.LSHL, PATTERN)
+                    .intoArray(filled, w);
+        for (int p = 0; p < pieces.length; p++) {
+            IntVector sum = IntVector.zero(INTS);
+            for (int w = 0; w < WINDOWS; w += LONGS.length()) {
+                LongVector chunk = pattern(pieces[p], w).or(LongVector.fromArray(LONGS, filled, w));
+                ((IntVector) chunk.castShape(INTS, 0)).intoArray(index, 0);
+                sum = sum.add(IntVector.fromArray(INTS, table, 0, index, 0));
+            }
+            totals[p] = sum.reduceLanes(VectorOperators.ADD)
+                    + Long.bitCount(pieces[p] & Connect5GUI.BitBoard.CENTER) * center;
+        }
+    }
+
+    /** Extended-window patterns of board for the windows w .. w + lanes - 1. */
+    private static LongVector pattern(long board, int w) {
+        LongVector b = LongVector.broadcast(LONGS, board);
+        LongVector bits = LongVector.zero(LONGS);
+        for (int k = 0; k < PATTERN; k++)
+            bits = bits.or(b.lanewise(VectorOperators.LSHR, LongVector.fromArray(LONGS, SQUARE[k], w))
+                    .and(LongVector.fromArray(LONGS, KEEP[k], w)).lanewise(VectorOperators.LSHL, k));
+        return bits;
+    }
+}